@@ -1,11 +1,24 @@
 package com.saantiaguilera.dynamic_resources.core;
 
 import android.content.Context;
+import android.os.Process;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import com.facebook.imagepipeline.core.PriorityThreadFactory;
+import com.saantiaguilera.dynamic_resources.internal.BitmapPool;
 import com.saantiaguilera.dynamic_resources.internal.Cache;
+import com.saantiaguilera.dynamic_resources.internal.CircuitBreaker;
 import com.saantiaguilera.dynamic_resources.internal.DiskCache;
+import com.saantiaguilera.dynamic_resources.internal.EvictionPolicy;
+import com.saantiaguilera.dynamic_resources.internal.MemoryCache;
+import com.saantiaguilera.dynamic_resources.internal.NegativeCache;
+import com.saantiaguilera.dynamic_resources.internal.RetryPolicy;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import okhttp3.OkHttpClient;
 
@@ -17,8 +30,40 @@ import okhttp3.OkHttpClient;
  */
 public class Configurations {
 
+    //Amount of cores of the device, the default executors scale with it
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+
+    //Default threads for probing the cache, its mostly waiting on disk so it can be more than the cores
+    private static final int DEFAULT_IO_THREADS = Math.max(2, Math.min(CPU_COUNT + 1, 4));
+
+    //Default threads for writing resources to disk in parallel
+    private static final int DEFAULT_WRITE_THREADS = Math.max(2, Math.min(CPU_COUNT, 4));
+
+    //Default threads for decoding bitmaps, its cpu bound so leave a core for the main thread
+    private static final int DEFAULT_DECODE_THREADS = Math.max(1, Math.min(CPU_COUNT - 1, 4));
+
+    //Default downloads running at the same time, the rest wait in priority order
+    private static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 4;
+
+    //Seconds an idle default thread is kept alive
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
     private @Nullable OkHttpClient client;
     private @Nullable Cache cache;
+    private @Nullable MemoryCache memoryCache;
+    private @Nullable BitmapPool bitmapPool;
+
+    private @Nullable Executor ioExecutor;
+    private @Nullable Executor writeExecutor;
+    private @Nullable Executor decodeExecutor;
+
+    private int maxConcurrentDownloads;
+
+    private @Nullable NegativeCache negativeCache;
+    private @Nullable RetryPolicy retryPolicy;
+    private @Nullable CircuitBreaker circuitBreaker;
+
+    private @Nullable EvictionPolicy evictionPolicy;
 
     /**
      * Package method to create a default configuration
@@ -26,9 +71,30 @@ public class Configurations {
      * @return Builder
      */
     static Builder getDefault(Context context) {
-        return new Builder()
+        return new Builder(context)
                 .okHttpClient(new OkHttpClient.Builder().cache(null).build())
-                .cache(new DiskCache(context));
+                .memoryCache(new MemoryCache(context))
+                .bitmapPool(new BitmapPool(context))
+                .ioExecutor(newBackgroundExecutor(DEFAULT_IO_THREADS))
+                .writeExecutor(newBackgroundExecutor(DEFAULT_WRITE_THREADS))
+                .decodeExecutor(newBackgroundExecutor(DEFAULT_DECODE_THREADS))
+                .maxConcurrentDownloads(DEFAULT_MAX_CONCURRENT_DOWNLOADS)
+                .retryPolicy(RetryPolicy.create().build())
+                .circuitBreaker(new CircuitBreaker());
+    }
+
+    /**
+     * Create a fixed size executor of background priority threads, which die when idle
+     * @param threads max amount of threads working at the same time
+     * @return Executor
+     */
+    private static @NonNull Executor newBackgroundExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new PriorityThreadFactory(Process.THREAD_PRIORITY_BACKGROUND));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     /**
@@ -45,11 +111,41 @@ public class Configurations {
      * Private constructor
      * @param client okHttpClient
      * @param cache cache
+     * @param memoryCache cache for decoded bitmaps
+     * @param bitmapPool pool of reusable bitmaps
+     * @param ioExecutor executor for cache lookups
+     * @param writeExecutor executor for disk writes
+     * @param decodeExecutor executor for decoding bitmaps
+     * @param maxConcurrentDownloads downloads running at the same time
+     * @param negativeCache cache of the uris that failed with a client error
+     * @param retryPolicy how failed downloads are retried
+     * @param circuitBreaker of the failing hosts
+     * @param evictionPolicy of the disk cache
      */
     private Configurations(@Nullable OkHttpClient client,
-                           @Nullable Cache cache) {
+                           @Nullable Cache cache,
+                           @Nullable MemoryCache memoryCache,
+                           @Nullable BitmapPool bitmapPool,
+                           @Nullable Executor ioExecutor,
+                           @Nullable Executor writeExecutor,
+                           @Nullable Executor decodeExecutor,
+                           int maxConcurrentDownloads,
+                           @Nullable NegativeCache negativeCache,
+                           @Nullable RetryPolicy retryPolicy,
+                           @Nullable CircuitBreaker circuitBreaker,
+                           @Nullable EvictionPolicy evictionPolicy) {
         this.client = client;
         this.cache = cache;
+        this.memoryCache = memoryCache;
+        this.bitmapPool = bitmapPool;
+        this.ioExecutor = ioExecutor;
+        this.writeExecutor = writeExecutor;
+        this.decodeExecutor = decodeExecutor;
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+        this.negativeCache = negativeCache;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
+        this.evictionPolicy = evictionPolicy;
     }
 
     /**
@@ -68,6 +164,86 @@ public class Configurations {
         return cache;
     }
 
+    /**
+     * Getter for the memory cache of decoded bitmaps
+     * @return memory cache if existing
+     */
+    public @Nullable MemoryCache getMemoryCache() {
+        return memoryCache;
+    }
+
+    /**
+     * Getter for the pool of reusable bitmaps
+     * @return bitmap pool if existing
+     */
+    public @Nullable BitmapPool getBitmapPool() {
+        return bitmapPool;
+    }
+
+    /**
+     * Getter for the executor where the cache is probed
+     * @return executor if existing
+     */
+    public @Nullable Executor getIoExecutor() {
+        return ioExecutor;
+    }
+
+    /**
+     * Getter for the executor where the resources are written to the cache
+     * @return executor if existing
+     */
+    public @Nullable Executor getWriteExecutor() {
+        return writeExecutor;
+    }
+
+    /**
+     * Getter for the executor where the bitmaps for plain ImageViews are decoded
+     * @return executor if existing
+     */
+    public @Nullable Executor getDecodeExecutor() {
+        return decodeExecutor;
+    }
+
+    /**
+     * Getter for the max amount of downloads running at the same time
+     * @return max concurrent downloads
+     */
+    public int getMaxConcurrentDownloads() {
+        return maxConcurrentDownloads;
+    }
+
+    /**
+     * Getter for the cache of the uris that failed with a client error
+     * @return negative cache if existing
+     */
+    public @Nullable NegativeCache getNegativeCache() {
+        return negativeCache;
+    }
+
+    /**
+     * Getter for how failed downloads are retried
+     * @return retry policy if existing
+     */
+    public @Nullable RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Getter for the circuit breaker of the failing hosts
+     * @return circuit breaker if existing
+     */
+    public @Nullable CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Getter for the policy that decides which resource the disk cache evicts
+     * @return eviction policy if existing
+     */
+    public @Nullable EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
     /**
      * Create a new builder with this configurations
      * @return Builder
@@ -83,6 +259,44 @@ public class Configurations {
             builder.cache(getCache());
         }
 
+        if (getMemoryCache() != null) {
+            builder.memoryCache(getMemoryCache());
+        }
+
+        if (getBitmapPool() != null) {
+            builder.bitmapPool(getBitmapPool());
+        }
+
+        if (getIoExecutor() != null) {
+            builder.ioExecutor(getIoExecutor());
+        }
+
+        if (getWriteExecutor() != null) {
+            builder.writeExecutor(getWriteExecutor());
+        }
+
+        if (getDecodeExecutor() != null) {
+            builder.decodeExecutor(getDecodeExecutor());
+        }
+
+        builder.maxConcurrentDownloads(getMaxConcurrentDownloads());
+
+        if (getNegativeCache() != null) {
+            builder.negativeCache(getNegativeCache());
+        }
+
+        if (getRetryPolicy() != null) {
+            builder.retryPolicy(getRetryPolicy());
+        }
+
+        if (getCircuitBreaker() != null) {
+            builder.circuitBreaker(getCircuitBreaker());
+        }
+
+        if (getEvictionPolicy() != null) {
+            builder.evictionPolicy(getEvictionPolicy());
+        }
+
         return builder;
     }
 
@@ -93,9 +307,30 @@ public class Configurations {
 
         private OkHttpClient client = null;
         private Cache cache = null;
+        private MemoryCache memoryCache = null;
+        private BitmapPool bitmapPool = null;
+
+        private Executor ioExecutor = null;
+        private Executor writeExecutor = null;
+        private Executor decodeExecutor = null;
+
+        private int maxConcurrentDownloads = DEFAULT_MAX_CONCURRENT_DOWNLOADS;
+
+        private NegativeCache negativeCache = null;
+        private RetryPolicy retryPolicy = null;
+        private CircuitBreaker circuitBreaker = null;
+
+        private EvictionPolicy evictionPolicy = null;
+
+        //To create the default cache if none is supplied
+        private Context context = null;
 
         private Builder() {}
 
+        private Builder(@NonNull Context context) {
+            this.context = context;
+        }
+
         /**
          * Setter for a networking client
          * @param client for networking requests
@@ -107,7 +342,10 @@ public class Configurations {
         }
 
         /**
-         * Setter for the cache used to store images in disk
+         * Setter for the cache used to store images in disk.
+         *
+         * By default its a DiskCache of 15MB, created when building only if none was supplied.
+         *
          * @param cache cache
          * @return Builder
          */
@@ -116,6 +354,150 @@ public class Configurations {
             return this;
         }
 
+        /**
+         * Setter for the cache used to keep decoded bitmaps in memory, for the resources shown
+         * in plain ImageViews (Fresco has its own).
+         *
+         * By default its sized as 1/8 of the memory class of the device.
+         *
+         * @param memoryCache memory cache
+         * @return Builder
+         */
+        public Builder memoryCache(@NonNull MemoryCache memoryCache) {
+            this.memoryCache = memoryCache;
+            return this;
+        }
+
+        /**
+         * Setter for the pool of bitmaps that arent shown anymore, which are reused when decoding
+         * new ones for plain ImageViews instead of allocating them.
+         *
+         * By default its sized as 1/16 of the memory class of the device.
+         *
+         * @param bitmapPool bitmap pool
+         * @return Builder
+         */
+        public Builder bitmapPool(@NonNull BitmapPool bitmapPool) {
+            this.bitmapPool = bitmapPool;
+            return this;
+        }
+
+        /**
+         * Setter for the executor where the cache lookups are done.
+         * The main thread never touches the disk, it only receives the results.
+         *
+         * By default its a pool of background threads sized according to the device cores.
+         *
+         * @param executor for cache lookups
+         * @return Builder
+         */
+        public Builder ioExecutor(@NonNull Executor executor) {
+            this.ioExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Setter for the executor where the downloaded resources are written to the cache (and
+         * removed from it). Independent resources are streamed to disk in parallel in it.
+         *
+         * By default its a pool of background threads sized according to the device cores.
+         *
+         * @param executor for disk writes
+         * @return Builder
+         */
+        public Builder writeExecutor(@NonNull Executor executor) {
+            this.writeExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Setter for the executor where the resources shown in plain ImageViews are decoded
+         * (Fresco decodes them by itself). Only the final bitmap is posted to the main thread.
+         *
+         * By default its a pool of background threads sized according to the device cores.
+         *
+         * @param executor for decoding bitmaps
+         * @return Builder
+         */
+        public Builder decodeExecutor(@NonNull Executor executor) {
+            this.decodeExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Setter for the max amount of downloads running at the same time. The rest wait until
+         * one finishes, and start in priority order.
+         *
+         * @param maxConcurrentDownloads downloads running at the same time, at least 1
+         * @return Builder
+         */
+        public Builder maxConcurrentDownloads(int maxConcurrentDownloads) {
+            if (maxConcurrentDownloads < 1) {
+                throw new IllegalArgumentException("Max concurrent downloads should be at least 1, got " + maxConcurrentDownloads);
+            }
+
+            this.maxConcurrentDownloads = maxConcurrentDownloads;
+            return this;
+        }
+
+        /**
+         * Setter for a cache of the uris that failed with a client error (eg. a 404). While an uri
+         * is in it, fetching it fails right away without touching the network.
+         *
+         * By default theres none, every fetch of a missing resource goes to the network.
+         *
+         * @param negativeCache negative cache
+         * @return Builder
+         */
+        public Builder negativeCache(@NonNull NegativeCache negativeCache) {
+            this.negativeCache = negativeCache;
+            return this;
+        }
+
+        /**
+         * Setter for how failed downloads are retried. Network errors and the retryable response
+         * codes are retried with an exponential backoff.
+         *
+         * By default its 3 attempts, starting with 500ms between them. Use RetryPolicy.none() to
+         * never retry.
+         *
+         * @param retryPolicy retry policy
+         * @return Builder
+         */
+        public Builder retryPolicy(@NonNull RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Setter for the circuit breaker of the hosts. While a host keeps failing, its downloads
+         * fail right away instead of hammering it.
+         *
+         * By default a host is considered down after 5 consecutive failures, for 30 secs.
+         *
+         * @param circuitBreaker circuit breaker
+         * @return Builder
+         */
+        public Builder circuitBreaker(@NonNull CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * Setter for the policy that decides which resource is evicted when the disk cache is full.
+         * Its only used if the cache is a DiskCache.
+         *
+         * By default its LRU. LfuPolicy, GreedyDualSizePolicy and TinyLfuPolicy keep the resources used
+         * all the time (eg. small icons) from being flushed by one-off big downloads.
+         *
+         * @param evictionPolicy eviction policy
+         * @return Builder
+         */
+        public Builder evictionPolicy(@NonNull EvictionPolicy evictionPolicy) {
+            this.evictionPolicy = evictionPolicy;
+            return this;
+        }
+
         /**
          * Build a new instance of Configurations. This should be supplied to Pomu or the Pipeline
          * if already initialized
@@ -123,8 +505,22 @@ public class Configurations {
          * @return Builder
          */
         public @NonNull Configurations build() {
+            if (cache == null && context != null) {
+                cache = new DiskCache(context);
+            }
+
             return new Configurations(client,
-                    cache);
+                    cache,
+                    memoryCache,
+                    bitmapPool,
+                    ioExecutor,
+                    writeExecutor,
+                    decodeExecutor,
+                    maxConcurrentDownloads,
+                    negativeCache,
+                    retryPolicy,
+                    circuitBreaker,
+                    evictionPolicy);
         }
 
     }
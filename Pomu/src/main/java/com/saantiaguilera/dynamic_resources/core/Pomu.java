@@ -2,19 +2,30 @@ package com.saantiaguilera.dynamic_resources.core;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.DisplayMetrics;
+import android.view.ViewGroup;
 import android.widget.ImageView;
 
 import com.facebook.drawee.view.DraweeView;
+import com.saantiaguilera.dynamic_resources.internal.BatchRequest;
+import com.saantiaguilera.dynamic_resources.internal.BitmapPool;
+import com.saantiaguilera.dynamic_resources.internal.CachePolicy;
+import com.saantiaguilera.dynamic_resources.internal.Cancelable;
+import com.saantiaguilera.dynamic_resources.internal.MemoryCache;
 import com.saantiaguilera.dynamic_resources.internal.Pipeline;
+import com.saantiaguilera.dynamic_resources.internal.Priority;
 import com.saantiaguilera.dynamic_resources.internal.Request;
 import com.saantiaguilera.dynamic_resources.internal.Validator;
 import com.saantiaguilera.dynamic_resources.internal.fresco.FrescoImageController;
+import com.saantiaguilera.dynamic_resources.internal.loading.BatchCallback;
 import com.saantiaguilera.dynamic_resources.internal.loading.BitmapCallback;
+import com.saantiaguilera.dynamic_resources.internal.loading.DecodeCallback;
 import com.saantiaguilera.dynamic_resources.internal.loading.FileCallback;
+import com.saantiaguilera.dynamic_resources.internal.loading.ProgressCallback;
+import com.saantiaguilera.dynamic_resources.internal.loading.UpdateCallback;
 import com.saantiaguilera.dynamic_resources.screen.ScreenDensity;
 import com.saantiaguilera.dynamic_resources.screen.UrlDensityFormatter;
 
@@ -82,16 +93,78 @@ public final class Pomu {
         return new Builder(context);
     }
 
+    /**
+     * Cancel the request loading into a view, if any. Its callback wont be called anymore.
+     *
+     * @param view to cancel its request
+     */
+    public static void cancel(@NonNull ImageView view) {
+        Pipeline.getInstance().cancel(view);
+    }
+
+    /**
+     * Clear the image a plain ImageView shows, so the memory of its bitmap can be reused for
+     * decoding other ones. The request loading into it, if any, is canceled too.
+     *
+     * @param view to clear
+     */
+    public static void clear(@NonNull ImageView view) {
+        cancel(view);
+        bind(view, null);
+    }
+
+    /**
+     * Show a bitmap in a plain ImageView, tracking it in the bitmap pool so once its not shown
+     * anymore it can be reused.
+     *
+     * @param view where the bitmap will be shown
+     * @param bitmap to show or null to clear the view
+     */
+    static void bind(@NonNull ImageView view, @Nullable Bitmap bitmap) {
+        BitmapPool pool = Pipeline.getInstance().getBitmapPool();
+
+        if (pool != null) {
+            pool.bind(view, bitmap);
+        } else if (bitmap != null) {
+            view.setImageBitmap(bitmap);
+        } else {
+            view.setImageDrawable(null);
+        }
+    }
+
+    /**
+     * Keep a decoded bitmap in the memory cache, if theres one
+     *
+     * @param key of the bitmap
+     * @param bitmap decoded
+     */
+    static void cache(@NonNull String key, @NonNull Bitmap bitmap) {
+        MemoryCache memoryCache = Pipeline.getInstance().getMemoryCache();
+
+        if (memoryCache != null) {
+            memoryCache.put(key, bitmap);
+        }
+    }
+
     /**
      * Builder class to create new Pomu requests
      */
     public static class Builder {
 
+        //Config used for decoding bitmaps in plain ImageViews
+        private static final Bitmap.Config BITMAP_CONFIG = Bitmap.Config.ARGB_8888;
+
         private @NonNull WeakReference<Context> context;
 
         private @Nullable List<Uri> uris;
         private @Nullable WeakReference<BitmapCallback> callback;
+        private @Nullable ProgressCallback progressCallback;
         private @Nullable FrescoImageController.Builder controller;
+        private @Nullable Priority priority;
+        private @NonNull CachePolicy cachePolicy;
+        private int parallelism;
+        private @Nullable String partition;
+        private boolean pinned;
 
         /**
          * Package visible constructor. Create Builders with Pomu.create(context).
@@ -101,6 +174,8 @@ public final class Pomu {
         Builder(@NonNull Context context) {
             this.context = new WeakReference<>(context);
             this.uris = null;
+            this.cachePolicy = CachePolicy.CACHE_FIRST;
+            this.parallelism = 0;
         }
 
         /**
@@ -186,6 +261,20 @@ public final class Pomu {
             return this;
         }
 
+        /**
+         * Callback to listen to the download progress of the image shown with into(). Its called in
+         * the main thread at most a few times per second, and only if the image has to be downloaded.
+         *
+         * The request can be canceled from it if its too slow.
+         *
+         * @param progressCallback to get notified of the download progress
+         * @return Builder
+         */
+        public Builder progress(@NonNull ProgressCallback progressCallback) {
+            this.progressCallback = progressCallback;
+            return this;
+        }
+
         /**
          * If using Fresco, you can supply a controller to customize the Image request prior to the decode
          *
@@ -198,15 +287,151 @@ public final class Pomu {
         }
 
         /**
-         * Create a file callback to add the File received to an ImageView
+         * Get the width the image will have in the view. If the view wasnt measured yet its layout
+         * params are used, and if they dont have an exact size the screen one.
+         *
+         * @param view where the image will be shown
+         * @return width in pixels
+         */
+        private int getTargetWidth(@NonNull ImageView view) {
+            if (view.getWidth() > 0) {
+                return view.getWidth();
+            }
+
+            ViewGroup.LayoutParams params = view.getLayoutParams();
+            if (params != null && params.width > 0) {
+                return params.width;
+            }
+
+            return getDisplayMetrics(view).widthPixels;
+        }
+
+        /**
+         * Get the height the image will have in the view. If the view wasnt measured yet its layout
+         * params are used, and if they dont have an exact size the screen one.
          *
          * @param view where the image will be shown
+         * @return height in pixels
+         */
+        private int getTargetHeight(@NonNull ImageView view) {
+            if (view.getHeight() > 0) {
+                return view.getHeight();
+            }
+
+            ViewGroup.LayoutParams params = view.getLayoutParams();
+            if (params != null && params.height > 0) {
+                return params.height;
+            }
+
+            return getDisplayMetrics(view).heightPixels;
+        }
+
+        /**
+         * Get the display metrics of the screen where a view is
+         * @param view attached to the screen
+         * @return display metrics
+         */
+        private @NonNull DisplayMetrics getDisplayMetrics(@NonNull ImageView view) {
+            return view.getResources().getDisplayMetrics();
+        }
+
+        /**
+         * Priority of the downloads. If there are more downloads than the max concurrent ones, they
+         * will be started in priority order.
+         *
+         * By default its {@link Priority#VISIBLE} for into() and {@link Priority#PREFETCH} for get()
+         *
+         * @param priority of the request
+         * @return Builder
+         */
+        public Builder priority(@NonNull Priority priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * How the cached images are used. By default they are used forever
+         * ({@link CachePolicy#CACHE_FIRST}), but they can be revalidated against the server so they
+         * are only downloaded again if they changed, or served right away while being refreshed in
+         * background.
+         *
+         * @param cachePolicy of the request
+         * @return Builder
+         */
+        public Builder cachePolicy(@NonNull CachePolicy cachePolicy) {
+            this.cachePolicy = cachePolicy;
+            return this;
+        }
+
+        /**
+         * Partition of the disk cache where the images are kept. Partitions are declared in the
+         * DiskCache with their own quota, so eg. the images of a feed cant evict the
+         * avatars. By default they are kept in the default partition, which uses the max disk size
+         * of the cache.
+         *
+         * Does nothing if the configured cache doesnt support partitions.
+         *
+         * @param partition name
+         * @return Builder
+         */
+        public Builder partition(@NonNull String partition) {
+            this.partition = partition;
+            return this;
+        }
+
+        /**
+         * Pin the images in the disk cache, so they are never evicted (eg. assets needed offline).
+         * They can be unpinned with {@link Pipeline#unpin(Uri)}.
+         *
+         * Pinned images dont count for any quota, so pin only what must stay.
+         *
+         * @return Builder
+         */
+        public Builder pin() {
+            this.pinned = true;
+            return this;
+        }
+
+        /**
+         * Max amount of uris downloaded at the same time by get(). By default its 4
+         *
+         * @param parallelism at least 1
+         * @return Builder
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism should be at least 1, got " + parallelism);
+            }
+
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Create a file callback to add the File received to an ImageView
+         *
+         * The view is weakly referenced, since the request is tracked by the pipeline until its
+         * finished (or, when revalidating in background, until the view loads another one)
+         *
+         * @param target where the image will be shown
+         * @param width of the image in the view
+         * @param height of the image in the view
+         * @param memoryKey key of the decoded bitmap in the memory cache
+         * @param handle of the request, if its canceled nothing is shown
          * @return FileCallback
          */
-        private FileCallback createRequestCallback(@NonNull final ImageView view) {
+        private FileCallback createRequestCallback(@NonNull final WeakReference<ImageView> target,
+                                                   final int width, final int height,
+                                                   @NonNull final String memoryKey,
+                                                   @NonNull final ViewRequest handle) {
             return new FileCallback() {
                 @Override
                 public void onFailure(@NonNull Exception e) {
+                    ImageView view = target.get();
+                    if (view != null) {
+                        Pipeline.getInstance().untrack(view, handle);
+                    }
+
                     if (callback != null) {
                         callback.get().onFailure(e);
                     }
@@ -214,45 +439,130 @@ public final class Pomu {
 
                 @Override
                 public void onSuccess(@NonNull File file) {
-                    if (view instanceof DraweeView) {
-                        //If fresco is available, take advantage of it
-                        FrescoImageController.Builder builder = controller;
+                    show(target, file, width, height, memoryKey, handle, true);
+                }
+            };
+        }
+
+        /**
+         * Create an update callback to show the new version of a resource that was served stale,
+         * in case it changed when refreshing it in background
+         *
+         * @param target where the image is shown
+         * @param width of the image in the view
+         * @param height of the image in the view
+         * @param memoryKey key of the decoded bitmap in the memory cache
+         * @param handle of the request, if its canceled nothing is shown
+         * @return UpdateCallback
+         */
+        private UpdateCallback createUpdateCallback(@NonNull final WeakReference<ImageView> target,
+                                                    final int width, final int height,
+                                                    @NonNull final String memoryKey,
+                                                    @NonNull final ViewRequest handle) {
+            return new UpdateCallback() {
+                @Override
+                public void onUpdate(@NonNull File file) {
+                    show(target, file, width, height, memoryKey, handle, false);
+                }
+            };
+        }
 
-                        if (builder == null) {
-                            builder = FrescoImageController.create(context.get());
+        /**
+         * Show a file in a view, unless the request was canceled or the view is gone
+         *
+         * @param target where the image will be shown
+         * @param file to show
+         * @param width of the image in the view
+         * @param height of the image in the view
+         * @param memoryKey key of the decoded bitmap in the memory cache
+         * @param handle of the request
+         * @param notify if the callback should be notified (its not for background updates)
+         */
+        private void show(@NonNull final WeakReference<ImageView> target, @NonNull File file,
+                          final int width, final int height,
+                          @NonNull final String memoryKey,
+                          @NonNull final ViewRequest handle,
+                          final boolean notify) {
+            ImageView view = target.get();
+            if (handle.isCanceled() || view == null) {
+                return;
+            }
+
+            //If it can be refreshed in background, keep tracking it so loading another one in the view cancels it
+            final boolean finished = cachePolicy != CachePolicy.STALE_WHILE_REVALIDATE;
+
+            if (view instanceof DraweeView) {
+                if (finished) {
+                    Pipeline.getInstance().untrack(view, handle);
+                }
+
+                //If fresco is available, take advantage of it
+                FrescoImageController.Builder builder = controller;
+
+                if (builder == null) {
+                    builder = FrescoImageController.create(context.get());
+                }
+
+                builder.load(file.toURI().toString()) //Its the same to do this or use the schema: "file://" + file.getPath()
+                        .noDiskCache() // Because doh
+                        .listener(new FrescoImageController.Callback() {
+                            //This is why I hate not using eventbus and getting callback hells :)
+                            @Override
+                            public void onSuccess() {
+                                if (notify && callback != null) {
+                                    callback.get().onSuccess();
+                                }
+                            }
+
+                            @Override
+                            public void onFailure(@NonNull Throwable t) {
+                                if (notify && callback != null) {
+                                    callback.get().onFailure(t);
+                                }
+                            }
+                        }).into((DraweeView) view);
+            } else {
+                //If its not, decode it in background subsampled to the view size and set it
+                Pipeline.getInstance().decode(file, width, height, BITMAP_CONFIG, new DecodeCallback() {
+                    @Override
+                    public void onSuccess(@NonNull Bitmap bitmap) {
+                        ImageView view = target.get();
+                        if (handle.isCanceled() || view == null) {
+                            //Its cached for later, but the view shows something else now
+                            cache(memoryKey, bitmap);
+                            return;
                         }
 
-                        builder.load(file.toURI().toString()) //Its the same to do this or use the schema: "file://" + file.getPath()
-                                .noDiskCache() // Because doh
-                                .listener(new FrescoImageController.Callback() {
-                                    //This is why I hate not using eventbus and getting callback hells :)
-                                    @Override
-                                    public void onSuccess() {
-                                        if (callback != null) {
-                                            callback.get().onSuccess();
-                                        }
-                                    }
-
-                                    @Override
-                                    public void onFailure(@NonNull Throwable t) {
-                                        if (callback != null) {
-                                            callback.get().onFailure(t);
-                                        }
-                                    }
-                                }).into((DraweeView) view);
-                    } else {
-                        //If its not, decode normally and set it (in Dalvik systems be careful with this)
-                        BitmapFactory.Options options = new BitmapFactory.Options();
-                        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-
-                        view.setImageBitmap(BitmapFactory.decodeFile(file.getPath(), options));
+                        if (finished) {
+                            Pipeline.getInstance().untrack(view, handle);
+                        }
 
-                        if (callback != null) {
+                        //Bind it before caching it, so if the cache evicts it right away its still referenced by the view
+                        bind(view, bitmap);
+                        cache(memoryKey, bitmap);
+
+                        if (notify && callback != null) {
                             callback.get().onSuccess();
                         }
                     }
-                }
-            };
+
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                        ImageView view = target.get();
+                        if (handle.isCanceled() || view == null) {
+                            return;
+                        }
+
+                        if (finished) {
+                            Pipeline.getInstance().untrack(view, handle);
+                        }
+
+                        if (notify && callback != null) {
+                            callback.get().onFailure(e);
+                        }
+                    }
+                });
+            }
         }
 
         /**
@@ -261,21 +571,63 @@ public final class Pomu {
          * Its useful if you need some images to be downloaded at the start of the application or at previous
          * steps where you still dont have the view, but as soon as you will have it you want the user
          * to see the image instantly (without waiting for it to download)
+         *
+         * @return handle to cancel the downloads
+         */
+        public @NonNull Cancelable get() {
+            return fetchBatch(null);
+        }
+
+        /**
+         * Download the selected uris as a batch and store them in the cache. This method wont show
+         * any of them.
+         *
+         * Only a few of them are downloaded at the same time (see parallelism()), and the callback
+         * is notified in the main thread of the aggregated progress and once all of them finished.
+         *
+         * @param callback for the progress of the batch
+         * @return handle to cancel the whole batch
+         */
+        public @NonNull Cancelable get(@NonNull BatchCallback callback) {
+            return fetchBatch(callback);
+        }
+
+        /**
+         * Fetch the selected uris as a batch
+         * @param callback for the progress of the batch, if any
+         * @return handle to cancel the whole batch
          */
         @SuppressWarnings("ConstantConditions")
-        public void get() {
+        private @NonNull Cancelable fetchBatch(@Nullable BatchCallback callback) {
             Validator.checkNullAndThrow(this, uris);
 
             if (!uris.isEmpty()) {
                 for (Uri uri : uris) {
                     Validator.checkNullAndThrow(this, uri);
+                }
+
+                BatchRequest.Builder builder = new BatchRequest.Builder()
+                        .uris(uris)
+                        .priority(priority == null ? Priority.PREFETCH : priority)
+                        .cachePolicy(cachePolicy);
 
-                    Request request = new Request.Builder()
-                            .uri(uri)
-                            .build();
+                if (parallelism > 0) {
+                    builder.parallelism(parallelism);
+                }
 
-                    Pipeline.getInstance().fetch(request);
+                if (partition != null) {
+                    builder.partition(partition);
                 }
+
+                if (pinned) {
+                    builder.pin();
+                }
+
+                if (callback != null) {
+                    builder.callback(callback);
+                }
+
+                return Pipeline.getInstance().fetch(builder.build());
             } else {
                 throw new IllegalStateException("No uris provided for Pomu get(). Forgot to call url()??");
             }
@@ -290,24 +642,80 @@ public final class Pomu {
          * This method will download the image, cache it so we dont have to do it again and instantly
          * show it in a imageView.
          *
-         * If you are using Fresco, this method will take advantage of it.
+         * If you are using Fresco, this method will take advantage of it. Else, the decoded image is
+         * kept in a memory cache so showing it again doesnt need to decode it nor touch the disk.
+         *
+         * If the view was already loading another request (eg. a recycled cell), the previous one is
+         * canceled, so it doesnt end up in the view nor keeps downloading if no one else needs it.
+         *
+         * With {@link CachePolicy#STALE_WHILE_REVALIDATE} the cached image is shown right away, and if
+         * it changed when refreshing it in background the new one replaces it.
+         *
+         * Must be called from the main thread.
          *
          * @param view where the image will be shown
+         * @return handle to cancel the request
          */
         @SuppressWarnings("ConstantConditions")
-        public void into(@NonNull final ImageView view) {
+        public @NonNull Cancelable into(@NonNull final ImageView view) {
             Validator.checkNullAndThrow(this, uris);
 
             if (uris.size() == 1) {
                 Uri uri = uris.get(0);
                 Validator.checkNullAndThrow(this, uri);
 
-                Request request = new Request.Builder()
+                //The view shows this one now, whatever it was loading before is stale
+                Pipeline.getInstance().cancel(view);
+
+                ViewRequest handle = new ViewRequest();
+
+                int width = getTargetWidth(view);
+                int height = getTargetHeight(view);
+
+                String memoryKey = MemoryCache.key(uri, width, height, BITMAP_CONFIG);
+                MemoryCache memoryCache = Pipeline.getInstance().getMemoryCache();
+                //A decoded bitmap is used as is, so it can only be trusted if the request doesnt revalidate
+                if (!(view instanceof DraweeView) && memoryCache != null && cachePolicy == CachePolicy.CACHE_FIRST) {
+                    Bitmap bitmap = memoryCache.get(memoryKey);
+
+                    if (bitmap != null) {
+                        bind(view, bitmap);
+
+                        //Its already on disk, but it may have been requested for another partition
+                        Pipeline.getInstance().place(uri, partition, pinned);
+
+                        if (callback != null) {
+                            callback.get().onSuccess();
+                        }
+                        return handle;
+                    }
+                }
+
+                WeakReference<ImageView> target = new WeakReference<>(view);
+                Request.Builder builder = new Request.Builder()
                         .uri(uri)
-                        .callback(createRequestCallback(view))
-                        .build();
+                        .callback(createRequestCallback(target, width, height, memoryKey, handle))
+                        .updateCallback(createUpdateCallback(target, width, height, memoryKey, handle))
+                        .priority(priority == null ? Priority.VISIBLE : priority)
+                        .cachePolicy(cachePolicy);
+
+                if (progressCallback != null) {
+                    builder.progressCallback(progressCallback);
+                }
+
+                if (partition != null) {
+                    builder.partition(partition);
+                }
+
+                if (pinned) {
+                    builder.pin();
+                }
+
+                Request request = builder.build();
 
-                Pipeline.getInstance().fetch(request);
+                Pipeline.getInstance().track(view, handle);
+                handle.setFetch(Pipeline.getInstance().fetch(request));
+                return handle;
             } else {
                 throw new IllegalStateException("Size of uris to put in ImageView is " + uris.size() + ". Please be sure to provide only 1 uri, we cant show multiple images in a single view (Neither zero)");
             }
@@ -0,0 +1,53 @@
+package com.saantiaguilera.dynamic_resources.core;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.saantiaguilera.dynamic_resources.internal.Cancelable;
+
+/**
+ * Handle of a request loading into a view. Canceling it stops waiting for the download (which
+ * is stopped too if no one else needs it) and makes sure nothing ends up in the view.
+ *
+ * Its only accessed from the main thread.
+ */
+final class ViewRequest implements Cancelable {
+
+    private @Nullable Cancelable fetch;
+    private boolean canceled;
+
+    /**
+     * Package visible constructor
+     */
+    ViewRequest() {
+        this.fetch = null;
+        this.canceled = false;
+    }
+
+    /**
+     * Set the fetch performing the download of the request
+     * @param fetch handle of the download
+     */
+    void setFetch(@NonNull Cancelable fetch) {
+        this.fetch = fetch;
+
+        if (canceled) {
+            fetch.cancel();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+
+        if (fetch != null) {
+            fetch.cancel();
+        }
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+}
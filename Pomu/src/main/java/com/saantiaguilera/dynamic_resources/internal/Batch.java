@@ -0,0 +1,176 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import com.saantiaguilera.dynamic_resources.internal.loading.BatchCallback;
+import com.saantiaguilera.dynamic_resources.internal.loading.FileCallback;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inner class that runs a batch request through the pipeline, keeping at most its parallelism
+ * of requests in flight. Each time one finishes the next one is started, so a batch of hundreds
+ * of uris doesnt flood the scheduler.
+ */
+final class Batch implements Cancelable {
+
+    private final @NonNull Pipeline pipeline;
+    private final @NonNull BatchRequest request;
+
+    //Requests in flight, with the callbacks they report to
+    private final @NonNull List<Cancelable> running;
+    private final @NonNull List<ItemCallback> callbacks;
+
+    private int next;
+    private int succeeded;
+    private int failed;
+    private long bytes;
+    private boolean canceled;
+
+    /**
+     * Constructor
+     * @param pipeline where the requests are fetched
+     * @param request with the uris to fetch
+     */
+    Batch(@NonNull Pipeline pipeline, @NonNull BatchRequest request) {
+        this.pipeline = pipeline;
+        this.request = request;
+        this.running = new ArrayList<>();
+        this.callbacks = new ArrayList<>();
+        this.next = 0;
+        this.succeeded = 0;
+        this.failed = 0;
+        this.bytes = 0;
+        this.canceled = false;
+    }
+
+    /**
+     * Start fetching the batch
+     */
+    synchronized void start() {
+        if (request.getUris().isEmpty()) {
+            if (request.getCallback() != null) {
+                request.getCallback().onComplete(0, 0, 0);
+            }
+            return;
+        }
+
+        while (running.size() < request.getParallelism() && next < request.getUris().size()) {
+            startNext();
+        }
+    }
+
+    /**
+     * Start the next request of the batch
+     */
+    private void startNext() {
+        Uri uri = request.getUris().get(next++);
+
+        //Its strongly kept here since the requests only keep a weak reference to it
+        ItemCallback callback = new ItemCallback();
+        callbacks.add(callback);
+
+        Request.Builder builder = new Request.Builder()
+                .uri(uri)
+                .callback(callback)
+                .priority(request.getPriority())
+                .cachePolicy(request.getCachePolicy());
+
+        if (request.getPartition() != null) {
+            builder.partition(request.getPartition());
+        }
+
+        if (request.isPinned()) {
+            builder.pin();
+        }
+
+        Cancelable fetch = pipeline.fetch(builder.build());
+
+        callback.fetch = fetch;
+        running.add(fetch);
+    }
+
+    /**
+     * Notify a request of the batch finished, and start the next one. Runs in the main thread
+     * @param callback of the finished request
+     * @param success if it succeeded
+     * @param size of the fetched resource
+     */
+    private synchronized void onFinished(@NonNull ItemCallback callback, boolean success, long size) {
+        if (canceled) {
+            return;
+        }
+
+        running.remove(callback.fetch);
+        callbacks.remove(callback);
+
+        if (success) {
+            succeeded++;
+            bytes += size;
+        } else {
+            failed++;
+        }
+
+        int total = request.getUris().size();
+        BatchCallback batchCallback = request.getCallback();
+
+        if (batchCallback != null) {
+            batchCallback.onProgress(succeeded, failed, total, bytes);
+
+            if (canceled) {
+                //It was canceled from the callback
+                return;
+            }
+        }
+
+        if (next < total) {
+            startNext();
+        } else if (running.isEmpty() && batchCallback != null) {
+            batchCallback.onComplete(succeeded, failed, bytes);
+        }
+    }
+
+    /**
+     * Cancel the batch. The requests in flight are canceled and no more are started
+     */
+    @Override
+    public synchronized void cancel() {
+        canceled = true;
+
+        for (Cancelable fetch : running) {
+            fetch.cancel();
+        }
+
+        running.clear();
+        callbacks.clear();
+    }
+
+    @Override
+    public synchronized boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Callback of a single request of the batch
+     */
+    private class ItemCallback implements FileCallback {
+
+        private Cancelable fetch;
+
+        @Override
+        public void onSuccess(@NonNull File file) {
+            //Its just a stat of the file, the fetch already had it in the disk cache
+            onFinished(this, true, file.length());
+        }
+
+        @Override
+        public void onFailure(@NonNull Exception e) {
+            onFinished(this, false, 0);
+        }
+
+    }
+
+}
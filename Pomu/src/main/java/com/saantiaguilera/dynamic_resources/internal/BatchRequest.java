@@ -0,0 +1,221 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.saantiaguilera.dynamic_resources.internal.loading.BatchCallback;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Request for fetching a batch of uris as a unit. Only a bounded amount of them are fetched at
+ * the same time, and a single callback receives the aggregated progress.
+ *
+ * As with Request, use this at your own risk. Pomu.Builder.get() already creates them.
+ */
+public class BatchRequest {
+
+    //Default requests of a batch fetched at the same time
+    private static final int DEFAULT_PARALLELISM = 4;
+
+    private @NonNull List<Uri> uris;
+    private @Nullable BatchCallback callback;
+    private @NonNull Priority priority;
+    private @NonNull CachePolicy cachePolicy;
+    private int parallelism;
+    private @Nullable String partition;
+    private boolean pinned;
+
+    /**
+     * Private constructor
+     * @param uris to fetch
+     * @param callback if existent
+     * @param priority of the requests
+     * @param cachePolicy of the requests
+     * @param parallelism requests fetched at the same time
+     * @param partition of the cache where the resources are kept, null for the default one
+     * @param pinned if the resources shouldnt be evicted
+     */
+    private BatchRequest(@NonNull List<Uri> uris,
+                         @Nullable BatchCallback callback,
+                         @NonNull Priority priority,
+                         @NonNull CachePolicy cachePolicy,
+                         int parallelism,
+                         @Nullable String partition,
+                         boolean pinned) {
+        this.uris = uris;
+        this.callback = callback;
+        this.priority = priority;
+        this.cachePolicy = cachePolicy;
+        this.parallelism = parallelism;
+        this.partition = partition;
+        this.pinned = pinned;
+    }
+
+    /**
+     * Getter for the uris to fetch
+     * @return uris
+     */
+    @NonNull
+    public List<Uri> getUris() {
+        return uris;
+    }
+
+    /**
+     * Getter for the callback if exists
+     * @return callback
+     */
+    @Nullable
+    public BatchCallback getCallback() {
+        return callback;
+    }
+
+    /**
+     * Getter for the priority of the requests
+     * @return priority
+     */
+    @NonNull
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Getter for how the cached resources are used
+     * @return cache policy
+     */
+    @NonNull
+    public CachePolicy getCachePolicy() {
+        return cachePolicy;
+    }
+
+    /**
+     * Getter for the amount of requests fetched at the same time
+     * @return parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Getter for the partition of the cache where the resources are kept
+     * @return partition or null for the default one
+     */
+    @Nullable
+    public String getPartition() {
+        return partition;
+    }
+
+    /**
+     * Getter for if the resources are pinned in the cache
+     * @return true if they shouldnt be evicted
+     */
+    public boolean isPinned() {
+        return pinned;
+    }
+
+    /**
+     * Builder class for creating batch requests
+     */
+    public static class Builder {
+
+        private List<Uri> uris = new ArrayList<>();
+        private BatchCallback callback;
+        private Priority priority = Priority.PREFETCH;
+        private CachePolicy cachePolicy = CachePolicy.CACHE_FIRST;
+        private int parallelism = DEFAULT_PARALLELISM;
+        private String partition = null;
+        private boolean pinned = false;
+
+        /**
+         * Empty constructor
+         */
+        public Builder() {}
+
+        /**
+         * Add uris to fetch
+         * @param uris to fetch
+         * @return Builder
+         */
+        public Builder uris(@NonNull List<Uri> uris) {
+            this.uris.addAll(uris);
+            return this;
+        }
+
+        /**
+         * Set a callback for the aggregated progress of the batch
+         * @param callback for receiving the progress
+         * @return Builder
+         */
+        public Builder callback(@NonNull BatchCallback callback) {
+            this.callback = callback;
+            return this;
+        }
+
+        /**
+         * Set the priority of the requests. By default its {@link Priority#PREFETCH}
+         * @param priority of the requests
+         * @return Builder
+         */
+        public Builder priority(@NonNull Priority priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * Set how the cached resources are used. By default its {@link CachePolicy#CACHE_FIRST}
+         * @param cachePolicy of the requests
+         * @return Builder
+         */
+        public Builder cachePolicy(@NonNull CachePolicy cachePolicy) {
+            this.cachePolicy = cachePolicy;
+            return this;
+        }
+
+        /**
+         * Set the max amount of requests of the batch fetched at the same time
+         * @param parallelism at least 1
+         * @return Builder
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism should be at least 1, got " + parallelism);
+            }
+
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Set the partition of the cache where the resources are kept, if the cache supports them
+         * @param partition name
+         * @return Builder
+         */
+        public Builder partition(@NonNull String partition) {
+            this.partition = partition;
+            return this;
+        }
+
+        /**
+         * Pin the resources in the cache, if it supports it, so they are never evicted
+         * @return Builder
+         */
+        public Builder pin() {
+            this.pinned = true;
+            return this;
+        }
+
+        /**
+         * Build a BatchRequest with the given params
+         * @return BatchRequest
+         */
+        public BatchRequest build() {
+            return new BatchRequest(Collections.unmodifiableList(new ArrayList<>(uris)),
+                    callback, priority, cachePolicy, parallelism, partition, pinned);
+        }
+
+    }
+
+}
@@ -0,0 +1,439 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.widget.ImageView;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of bitmaps that arent used anymore, so new decodes can reuse their memory through
+ * BitmapFactory.Options.inBitmap instead of allocating a new bitmap each time.
+ *
+ * A bitmap is considered in use while its referenced (by the memory cache or by a view showing it).
+ * Once its last reference is released it goes back to the pool. Views are weakly referenced, if one is
+ * collected without being cleared (eg. its activity was destroyed) the reference of its bitmap is released.
+ *
+ * Bitmaps are bucketed by their size. Since KitKat a bitmap can be reused for any decode that fits
+ * in its allocation, before it they can only be reused for decodes with exactly the same dimensions
+ * and no subsampling.
+ *
+ * If users want to still use this, but change the maximum memory available for the pool,
+ * they can supply in a custom configurations this class using the int constructor
+ */
+public class BitmapPool {
+
+    //Fraction of the app memory class used by default (1/16 of the available heap)
+    private static final int DEFAULT_MEMORY_FRACTION = 16;
+
+    private static final int BYTES_IN_MB = 1024 * 1024;
+
+    //Max times a pooled bitmap can be bigger than the requested one to reuse it
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private final int maxSize;
+    private int size;
+
+    /**
+     * Pooled bitmaps. The sized ones are used since KitKat, the dimensioned ones before it.
+     */
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> sized;
+    private final Map<String, ArrayDeque<Bitmap>> dimensioned;
+
+    //References to the bitmaps in use
+    private final IdentityHashMap<Bitmap, Integer> references;
+
+    //Bitmaps currently shown by the views
+    private final WeakHashMap<ImageView, Binding> bound;
+
+    //Bindings of the views not cleared yet, strongly held so they are enqueued once their view is collected
+    private final Set<Binding> bindings;
+    private final ReferenceQueue<ImageView> collected;
+
+    /**
+     * Instrumentation of the pool
+     */
+    private long hits;
+    private long misses;
+    private long reusedBytes;
+    private long evictions;
+
+    /**
+     * Default constructor, sized as a fraction of the memory class of the device
+     * @param context with access to the system services
+     */
+    public BitmapPool(@NonNull Context context) {
+        this(getDefaultSize(context));
+    }
+
+    /**
+     * Constructor with a custom max size
+     * @param maxSize in bytes the pooled bitmaps can use
+     */
+    public BitmapPool(int maxSize) {
+        this.maxSize = maxSize;
+        this.size = 0;
+        this.sized = new TreeMap<>();
+        this.dimensioned = new HashMap<>();
+        this.references = new IdentityHashMap<>();
+        this.bound = new WeakHashMap<>();
+        this.bindings = new HashSet<>();
+        this.collected = new ReferenceQueue<>();
+    }
+
+    /**
+     * Get the default size for the device
+     * @param context with access to the system services
+     * @return size in bytes
+     */
+    private static int getDefaultSize(@NonNull Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        return activityManager.getMemoryClass() * BYTES_IN_MB / DEFAULT_MEMORY_FRACTION;
+    }
+
+    /**
+     * Check if bitmaps can be reused for decodes of different sizes
+     * @return true if the platform supports it
+     */
+    private static boolean isFlexibleReuseSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    /**
+     * Get the bytes allocated for a bitmap
+     * @param bitmap to measure
+     * @return size in bytes
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    static int getSize(@NonNull Bitmap bitmap) {
+        if (isFlexibleReuseSupported()) {
+            return bitmap.getAllocationByteCount();
+        }
+
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    /**
+     * Get the bytes a pixel takes in a given config
+     * @param config of the bitmap
+     * @return bytes per pixel
+     */
+    private static int getBytesPerPixel(@NonNull Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            case ARGB_8888:
+            default:
+                return 4;
+        }
+    }
+
+    /**
+     * Key for the pre KitKat buckets
+     */
+    private static @NonNull String key(int width, int height, @NonNull Bitmap.Config config) {
+        return String.valueOf(width) + 'x' + height + ':' + config.name();
+    }
+
+    /**
+     * Add a reference to a bitmap, meaning its in use
+     * @param bitmap in use
+     */
+    public synchronized void acquire(@NonNull Bitmap bitmap) {
+        Integer count = references.get(bitmap);
+        references.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Release a reference of a bitmap. If no one else uses it, it will go to the pool
+     * @param bitmap not used anymore by the caller
+     */
+    public synchronized void release(@NonNull Bitmap bitmap) {
+        Integer count = references.get(bitmap);
+
+        if (count == null) {
+            return;
+        }
+
+        if (count > 1) {
+            references.put(bitmap, count - 1);
+        } else {
+            references.remove(bitmap);
+            put(bitmap);
+        }
+    }
+
+    /**
+     * Show a bitmap in a view, releasing the one it was showing before. Supply a null bitmap
+     * to clear the view.
+     *
+     * Runs in the main thread
+     *
+     * @param view where the bitmap will be shown
+     * @param bitmap to show, or null to clear it
+     */
+    public void bind(@NonNull ImageView view, @Nullable Bitmap bitmap) {
+        Binding previous;
+
+        synchronized (this) {
+            releaseCollected();
+
+            if (bitmap != null) {
+                acquire(bitmap);
+                Binding binding = new Binding(view, bitmap, collected);
+                bindings.add(binding);
+                previous = bound.put(view, binding);
+            } else {
+                previous = bound.remove(view);
+            }
+
+            if (previous != null) {
+                //Its released below, it shouldnt be released again if the view is collected
+                bindings.remove(previous);
+                previous.clear();
+            }
+        }
+
+        //The view is called without holding the pool, it might call back (eg. a custom ImageView)
+        if (bitmap != null) {
+            view.setImageBitmap(bitmap);
+        } else {
+            view.setImageDrawable(null);
+        }
+
+        //Once its not shown anymore
+        if (previous != null) {
+            release(previous.bitmap);
+        }
+    }
+
+    /**
+     * Release the bitmaps of the views that were collected without being cleared
+     */
+    private void releaseCollected() {
+        Reference<? extends ImageView> reference;
+
+        while ((reference = collected.poll()) != null) {
+            Binding binding = (Binding) reference;
+
+            if (bindings.remove(binding)) {
+                release(binding.bitmap);
+            }
+        }
+    }
+
+    /**
+     * Put a bitmap no one uses in the pool. If it cant be reused its recycled
+     * @param bitmap not used anymore
+     */
+    synchronized void put(@NonNull Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return;
+        }
+
+        int bitmapSize = getSize(bitmap);
+        if (!bitmap.isMutable() || bitmap.getConfig() == null || bitmapSize > maxSize) {
+            bitmap.recycle();
+            return;
+        }
+
+        ArrayDeque<Bitmap> bucket;
+        if (isFlexibleReuseSupported()) {
+            bucket = sized.get(bitmapSize);
+            if (bucket == null) {
+                sized.put(bitmapSize, bucket = new ArrayDeque<>());
+            }
+        } else {
+            String key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            bucket = dimensioned.get(key);
+            if (bucket == null) {
+                dimensioned.put(key, bucket = new ArrayDeque<>());
+            }
+        }
+
+        bucket.offerLast(bitmap);
+        size += bitmapSize;
+
+        trim();
+    }
+
+    /**
+     * Get a bitmap from the pool that can be reused for a decode
+     * @param width of the decoded bitmap
+     * @param height of the decoded bitmap
+     * @param config of the decoded bitmap
+     * @param sampleSize of the decode
+     * @return bitmap that can be used as inBitmap, or null if theres none
+     */
+    synchronized @Nullable Bitmap get(int width, int height, @NonNull Bitmap.Config config, int sampleSize) {
+        //The bitmaps of the collected views can be reused already
+        releaseCollected();
+
+        Bitmap bitmap = null;
+
+        if (isFlexibleReuseSupported()) {
+            int requested = width * height * getBytesPerPixel(config);
+            Integer bucketSize = sized.ceilingKey(requested);
+
+            if (bucketSize != null && bucketSize <= requested * MAX_SIZE_MULTIPLE) {
+                bitmap = poll(sized, bucketSize);
+            }
+        } else if (sampleSize == 1) {
+            bitmap = poll(dimensioned, key(width, height, config));
+        }
+
+        if (bitmap != null) {
+            hits++;
+            reusedBytes += getSize(bitmap);
+            size -= getSize(bitmap);
+        } else {
+            misses++;
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Poll a bitmap from a bucket, removing the bucket if it gets empty
+     */
+    private static @Nullable <K> Bitmap poll(@NonNull Map<K, ArrayDeque<Bitmap>> buckets, @NonNull K key) {
+        ArrayDeque<Bitmap> bucket = buckets.get(key);
+
+        if (bucket == null) {
+            return null;
+        }
+
+        Bitmap bitmap = bucket.pollFirst();
+        if (bucket.isEmpty()) {
+            buckets.remove(key);
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Evict bitmaps until the pool fits in its max size. The biggest ones are evicted first
+     * since they free more memory.
+     */
+    private void trim() {
+        while (size > maxSize) {
+            Bitmap bitmap;
+
+            if (!sized.isEmpty()) {
+                bitmap = poll(sized, sized.lastKey());
+            } else if (!dimensioned.isEmpty()) {
+                bitmap = poll(dimensioned, dimensioned.keySet().iterator().next());
+            } else {
+                size = 0;
+                return;
+            }
+
+            if (bitmap != null) {
+                size -= getSize(bitmap);
+                bitmap.recycle();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Recycle all the pooled bitmaps
+     */
+    public synchronized void clear() {
+        for (ArrayDeque<Bitmap> bucket : sized.values()) {
+            for (Bitmap bitmap : bucket) {
+                bitmap.recycle();
+            }
+        }
+
+        for (ArrayDeque<Bitmap> bucket : dimensioned.values()) {
+            for (Bitmap bitmap : bucket) {
+                bitmap.recycle();
+            }
+        }
+
+        sized.clear();
+        dimensioned.clear();
+        size = 0;
+    }
+
+    /**
+     * Getter
+     * @return amount of decodes that reused a pooled bitmap instead of allocating one
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Getter
+     * @return amount of decodes that had to allocate a new bitmap
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Getter
+     * @return bytes that didnt have to be allocated thanks to the pool
+     */
+    public synchronized long getReusedBytes() {
+        return reusedBytes;
+    }
+
+    /**
+     * Getter
+     * @return amount of pooled bitmaps recycled because the pool was full
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Getter
+     * @return bytes currently pooled
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Bitmap shown by a view. Its enqueued once the view is collected
+     */
+    private static final class Binding extends WeakReference<ImageView> {
+
+        final @NonNull Bitmap bitmap;
+
+        Binding(@NonNull ImageView view, @NonNull Bitmap bitmap, @NonNull ReferenceQueue<ImageView> queue) {
+            super(view, queue);
+            this.bitmap = bitmap;
+        }
+
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "{hits=" + hits + ", misses=" + misses +
+                ", reusedBytes=" + reusedBytes + ", evictions=" + evictions +
+                ", size=" + size + "/" + maxSize + "}";
+    }
+
+}
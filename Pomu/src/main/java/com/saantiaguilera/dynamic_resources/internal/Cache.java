@@ -7,6 +7,8 @@ import android.support.annotation.Nullable;
 import java.io.File;
 import java.io.InputStream;
 
+import okio.BufferedSource;
+
 /**
  * Cache interface class. Developers should implement this if they want to supply a custom cache
  *
@@ -24,9 +26,20 @@ public interface Cache {
      */
     File put(@NonNull Uri key, @NonNull InputStream data) throws Exception;
 
+    /**
+     * Put new data in the cache with a given key, reading it straight from a source (eg. the
+     * body of a network response) to avoid intermediate copies.
+     * This will always be run in a background thread.
+     * @param key key which will be used in every other transaction to retreive the data
+     * @param data source with the image data. It will be closed once consumed
+     * @return File a file with the image data
+     * @throws Exception if there was a problem writing the file or caching the image
+     */
+    File put(@NonNull Uri key, @NonNull BufferedSource data) throws Exception;
+
     /**
      * Method to know if a key is in the cache.
-     * This will be run in the main thread.
+     * This will always be run in a background thread.
      * @param key key which will be used in every other transaction
      * @return true if the key exists, false otherwise
      */
@@ -34,7 +47,7 @@ public interface Cache {
 
     /**
      * Get the file asociated to a given key.
-     * This could be run in the main thread.
+     * This will always be run in a background thread.
      * @param key key which will be used in every other transaction
      * @return File if the key exists, null otherwise
      */
@@ -0,0 +1,34 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+/**
+ * How a cached resource is used by a request.
+ *
+ * Revalidations only happen if the cache keeps the validators of its entries (see
+ * {@link RevalidatingCache}) and the resource has any. Else the cached resource is used as is.
+ */
+public enum CachePolicy {
+
+    /**
+     * Use the cached resource forever, its only downloaded if its not cached.
+     */
+    CACHE_FIRST,
+
+    /**
+     * Use the cached resource while its fresh. Once its stale its revalidated, so its only
+     * downloaded again if it changed.
+     */
+    REVALIDATE_IF_STALE,
+
+    /**
+     * Always revalidate the cached resource before using it.
+     */
+    REVALIDATE,
+
+    /**
+     * Use the cached resource right away, even if its stale. If it is, its revalidated in background
+     * with a low priority (or downloaded again if it has no validators), and if it changed the update
+     * callback of the request is notified.
+     */
+    STALE_WHILE_REVALIDATE
+
+}
@@ -0,0 +1,21 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+/**
+ * Handle of a request that can be canceled. Once canceled, its callbacks wont be called anymore
+ * and if no one else is waiting for the same resource its download is stopped.
+ */
+public interface Cancelable {
+
+    /**
+     * Cancel the request. Canceling an already finished or canceled request does nothing.
+     * Should be called from the main thread.
+     */
+    void cancel();
+
+    /**
+     * Check if the request was canceled
+     * @return true if it was canceled
+     */
+    boolean isCanceled();
+
+}
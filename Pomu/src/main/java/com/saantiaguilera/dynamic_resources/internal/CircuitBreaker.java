@@ -0,0 +1,130 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per host circuit breaker. After too many consecutive failures against a host, its circuit opens
+ * and every download from it fails right away instead of hammering it while its down.
+ *
+ * Once the open time passes, a single download is let through to probe the host. If it succeeds
+ * the circuit closes, else it opens again.
+ *
+ * If users want to still use this, but change its thresholds, they can supply in a custom
+ * configurations this class using the 2 params constructor
+ */
+public class CircuitBreaker {
+
+    //Default consecutive failures that open a circuit
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    //Default time a circuit stays open
+    private static final long DEFAULT_OPEN_MILLIS = 30 * 1000; // 30 secs
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private final @NonNull Map<String, Circuit> circuits;
+
+    /**
+     * Default constructor
+     */
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+    }
+
+    /**
+     * Constructor with custom thresholds
+     * @param failureThreshold consecutive failures that open a circuit
+     * @param openMillis time a circuit stays open before probing the host again
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.circuits = new HashMap<>();
+    }
+
+    /**
+     * Check if a download from a host can go to the network
+     * @param host of the download
+     * @return true if it can, false if it should fail right away
+     */
+    public synchronized boolean allow(@NonNull String host) {
+        Circuit circuit = circuits.get(host);
+
+        if (circuit == null || circuit.failures < failureThreshold) {
+            return true;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        if (!circuit.probing && now - circuit.openedAt >= openMillis) {
+            //Let a single one through to check if its back
+            circuit.probing = true;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Notify a download from a host reached it
+     * @param host of the download
+     */
+    public synchronized void onSuccess(@NonNull String host) {
+        circuits.remove(host);
+    }
+
+    /**
+     * Notify a download from a host failed because of it (its unreachable or errored)
+     * @param host of the download
+     */
+    public synchronized void onFailure(@NonNull String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit == null) {
+            circuits.put(host, circuit = new Circuit());
+        }
+
+        circuit.failures++;
+        circuit.probing = false;
+        if (circuit.failures >= failureThreshold) {
+            circuit.openedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Notify a download from a host that was let through never reported back (eg. it was canceled).
+     * If it was probing the host, another download can probe it. The failures are kept as they are
+     * @param host of the download
+     */
+    public synchronized void onAbandoned(@NonNull String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit != null) {
+            circuit.probing = false;
+        }
+    }
+
+    /**
+     * Check if the circuit of a host is open
+     * @param host to check
+     * @return true if downloads from it are failing right away
+     */
+    public synchronized boolean isOpen(@NonNull String host) {
+        Circuit circuit = circuits.get(host);
+        return circuit != null && circuit.failures >= failureThreshold;
+    }
+
+    /**
+     * Failures of a host
+     */
+    private static class Circuit {
+
+        int failures;
+        long openedAt;
+        boolean probing;
+
+    }
+
+}
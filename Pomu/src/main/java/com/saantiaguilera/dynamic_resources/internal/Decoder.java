@@ -0,0 +1,135 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.saantiaguilera.dynamic_resources.internal.loading.DecodeCallback;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Inner class that decodes a cached file into a bitmap for a given target size.
+ *
+ * The bounds of the image are read first, so the image is subsampled to the smallest size that still
+ * covers the target. This way a 3000x3000 image shown in a 300x300 view doesnt take 36MB of memory.
+ */
+final class Decoder implements Runnable {
+
+    private @NonNull File file;
+    private int width;
+    private int height;
+    private @NonNull Bitmap.Config config;
+    private @NonNull DecodeCallback callback;
+    private @Nullable BitmapPool pool;
+
+    /**
+     * Constructor
+     * @param file to decode
+     * @param width of the target, the bitmap will be at least this wide if the image is
+     * @param height of the target, the bitmap will be at least this tall if the image is
+     * @param config of the decoded bitmap
+     * @param callback notified in the main thread with the result
+     * @param pool of bitmaps to reuse, if any
+     */
+    Decoder(@NonNull File file, int width, int height,
+            @NonNull Bitmap.Config config, @NonNull DecodeCallback callback,
+            @Nullable BitmapPool pool) {
+        this.file = file;
+        this.width = width;
+        this.height = height;
+        this.config = config;
+        this.callback = callback;
+        this.pool = pool;
+    }
+
+    /**
+     * Calculate the biggest power of 2 subsampling that keeps the image bigger than the target
+     * @param imageWidth real width of the image
+     * @param imageHeight real height of the image
+     * @param targetWidth width of the target
+     * @param targetHeight height of the target
+     * @return sample size to use
+     */
+    static int calculateSampleSize(int imageWidth, int imageHeight, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return sampleSize;
+        }
+
+        while ((imageWidth / (sampleSize * 2)) >= targetWidth &&
+                (imageHeight / (sampleSize * 2)) >= targetHeight) {
+            sampleSize *= 2;
+        }
+
+        return sampleSize;
+    }
+
+    /**
+     * Decode the file. Runs in a worker thread
+     */
+    @WorkerThread
+    @Override
+    public void run() {
+        final Bitmap bitmap = decode();
+
+        Dispatcher.get().post(new Runnable() {
+            @Override
+            public void run() {
+                if (bitmap != null) {
+                    callback.onSuccess(bitmap);
+                } else {
+                    callback.onFailure(new IOException("Couldnt decode " + file.getName()));
+                }
+            }
+        });
+    }
+
+    /**
+     * Decode the bitmap for the target
+     * @return bitmap or null if it couldnt be decoded
+     */
+    @WorkerThread
+    private @Nullable Bitmap decode() {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inSampleSize = calculateSampleSize(options.outWidth, options.outHeight, width, height);
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = config;
+        options.inMutable = true;
+
+        if (pool != null) {
+            int decodedWidth = (int) Math.ceil(options.outWidth / (double) options.inSampleSize);
+            int decodedHeight = (int) Math.ceil(options.outHeight / (double) options.inSampleSize);
+            options.inBitmap = pool.get(decodedWidth, decodedHeight, config, options.inSampleSize);
+        }
+
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        } catch (IllegalArgumentException e) {
+            //The pooled bitmap couldnt be reused for this image
+            bitmap = null;
+        }
+
+        if (bitmap == null && options.inBitmap != null) {
+            //Give it back and decode allocating a new one
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        }
+
+        return bitmap;
+    }
+
+}
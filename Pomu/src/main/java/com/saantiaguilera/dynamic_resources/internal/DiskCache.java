@@ -8,26 +8,36 @@ import android.support.annotation.WorkerThread;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
 
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Sink;
+
 /**
  * Custom cache that uses as default Pomu.
  * If users want to still use this, but change the maximum disk size available for the cache,
  * they can supply  in a custom configurations this class using the 2 params constructor
  *
+ * All the instances share the same dir, so only the last one created keeps its size and journal,
+ * the previous ones stop evicting. Create a single one per app.
+ *
  * Created by saguilera on 8/26/16.
  */
-public class DiskCache implements Cache {
+public class DiskCache implements ResumableCache, RevalidatingCache, PartitionedCache {
 
     //Maximum disk size to be used by the cache
     private static final int DEFAULT_DISK_SIZE = 1024 * 1024 * 15; // 15MB
 
-    //Buffer size for writing files
-    private static final int BUFFER_SIZE = 1024;
+    //Durability used if none is supplied
+    private static final Durability DEFAULT_DURABILITY = Durability.DATA;
 
     private @NonNull WeakReference<Context> context;
     private @NonNull LruCounter lruCounter;
+    private @NonNull Durability durability;
+    private int depth;
 
     /**
      * Default constructor with DEFAULT_DISK_CACHE as max disk size.
@@ -43,7 +53,40 @@ public class DiskCache implements Cache {
      * @param maxDiskSize the cache will use to store images, or either clean up.
      */
     public DiskCache(@NonNull Context context, long maxDiskSize) {
+        this(context, maxDiskSize, DEFAULT_DURABILITY);
+    }
+
+    /**
+     * Constructor with a custom disk size and durability for the written files.
+     * @param context with resource access
+     * @param maxDiskSize the cache will use to store images, or either clean up.
+     * @param durability guarantees a written file has before being considered cached
+     */
+    public DiskCache(@NonNull Context context, long maxDiskSize, @NonNull Durability durability) {
+        this(context, maxDiskSize, durability, Files.DEFAULT_DEPTH);
+    }
+
+    /**
+     * Constructor with a custom disk size, durability and layout for the written files.
+     *
+     * Files are spread in levels of subdirs named after their hash (each level with up to 256 of them),
+     * so no dir gets too big to list or lookup fast. With tens of thousands of files a depth of 2
+     * might be worth it, with a few hundred 0 (a flat dir) is enough.
+     * If the depth changes, the existing files are moved to the new layout once.
+     *
+     * @param context with resource access
+     * @param maxDiskSize the cache will use to store images, or either clean up.
+     * @param durability guarantees a written file has before being considered cached
+     * @param depth levels of subdirs the files are spread in, from 0 to 4
+     */
+    public DiskCache(@NonNull Context context, long maxDiskSize, @NonNull Durability durability, int depth) {
+        if (depth < 0 || depth > Files.MAX_DEPTH) {
+            throw new IllegalArgumentException("Depth must be between 0 and " + Files.MAX_DEPTH + ", was " + depth);
+        }
+
         this.context = new WeakReference<>(context);
+        this.durability = durability;
+        this.depth = depth;
         this.lruCounter = new LruCounter(this, maxDiskSize);
     }
 
@@ -56,31 +99,97 @@ public class DiskCache implements Cache {
     }
 
     /**
-     * Method to write an input stream in a file. This method should always be run in a background
+     * Package access depth getter
+     * @return levels of subdirs the files are spread in
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Set the policy that decides which file is evicted when the cache is full. By default its LRU
+     * @param policy of the eviction
+     */
+    public void setEvictionPolicy(@NonNull EvictionPolicy policy) {
+        lruCounter.setPolicy(policy);
+    }
+
+    /**
+     * Declare a partition, with its own quota and LRU eviction. Resources placed in it (see
+     * {@link #assign(Uri, String)}) only evict each other, and they dont count for the max disk size
+     * of the cache, which is the quota of the default partition.
+     *
+     * Resources placed in a partition that isnt declared are in the default one until its declared.
+     *
+     * @param name of the partition
+     * @param maxDiskSize quota of the partition
+     * @return this, for declaring more
+     */
+    public @NonNull DiskCache addPartition(@NonNull String name, long maxDiskSize) {
+        return addPartition(name, maxDiskSize, new LruPolicy());
+    }
+
+    /**
+     * Declare a partition, with its own quota and eviction policy.
+     *
+     * @param name of the partition
+     * @param maxDiskSize quota of the partition
+     * @param policy of the eviction of its resources
+     * @return this, for declaring more
+     */
+    public @NonNull DiskCache addPartition(@NonNull String name, long maxDiskSize, @NonNull EvictionPolicy policy) {
+        lruCounter.addPartition(name, maxDiskSize, policy);
+        return this;
+    }
+
+    /**
+     * Get the file for a key
+     * @param key of the resource
+     * @return File where its stored
+     */
+    private @NonNull File getFile(@NonNull Uri key) {
+        return Files.create(getContext(), key, depth);
+    }
+
+    /**
+     * Method to write a source in a file. This method should always be run in a background
      * worker.
      *
+     * The source segments are written straight into the file, without copying them through an
+     * intermediate buffer.
+     *
+     * The data is written to a temporary file in the same dir, synced according to the durability
+     * and then atomically renamed to the output. This way the output either doesnt exist or its
+     * complete, even if the process dies in the middle or two writers race for the same key.
+     * If the output already exists (eg. a new version of a revalidated resource), its replaced.
+     *
      * @param output file were the data will be written
      * @param data of the image
      * @return true if it was successfully written, false otherwise
      * @throws Exception if something wrong happened
      */
     @WorkerThread
-    private boolean write(@NonNull File output, @NonNull InputStream data) throws Exception {
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private boolean write(@NonNull File output, @NonNull BufferedSource data) throws Exception {
         FileOutputStream fos = null;
+        File temp = null;
 
         try {
-            if (output.exists()) {
-                return true;
-            }
+            temp = Files.createTemp(output);
+            fos = new FileOutputStream(temp);
 
-            fos = new FileOutputStream(output);
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int bytesRead = 0;
-            while ((bytesRead = data.read(buffer, 0, buffer.length)) >= 0) {
-                fos.write(buffer, 0, bytesRead);
-            }
+            Sink sink = Okio.sink(fos);
+            data.readAll(sink);
+            sink.flush();
+
+            sync(fos);
+            fos.close();
+            fos = null;
 
-            fos.flush();
+            if (!temp.renameTo(output)) {
+                throw new IOException("Couldnt move " + temp.getName() + " to " + output.getName());
+            }
+            temp = null;
         } finally {
             if (data != null) {
                 data.close();
@@ -89,11 +198,94 @@ public class DiskCache implements Cache {
             if (fos != null) {
                 fos.close();
             }
+
+            if (temp != null) {
+                temp.delete();
+            }
         }
 
         return true;
     }
 
+    /**
+     * Method to append a source to a partial download and move it into place once its complete.
+     * This method should always be run in a background worker.
+     *
+     * Whatever is received is kept in the partial file, even if the source fails midway, so the
+     * download can be resumed from there. Once the source is exhausted the partial file is checked
+     * against the total length, synced according to the durability and atomically renamed to the output.
+     *
+     * @param output file were the data will be written
+     * @param partial download the source continues
+     * @param data remaining bytes of the image
+     * @throws Exception if something wrong happened or the data is incomplete
+     */
+    @WorkerThread
+    private void append(@NonNull File output, @NonNull Partial partial, @NonNull BufferedSource data) throws Exception {
+        FileOutputStream fos = null;
+
+        try {
+            fos = new FileOutputStream(partial.getData(), true);
+
+            Sink sink = Okio.sink(fos);
+            try {
+                data.readAll(sink);
+            } finally {
+                //Keep whatever was received so far
+                sink.flush();
+            }
+
+            long received = partial.getLength();
+            long expected = partial.getTotalLength();
+            if (expected >= 0 && received != expected) {
+                if (received > expected) {
+                    partial.delete();
+                }
+                throw new IOException("Received " + received + " bytes of " + expected + " for " + output.getName());
+            }
+
+            sync(fos);
+            fos.close();
+            fos = null;
+
+            if (!partial.getData().renameTo(output)) {
+                throw new IOException("Couldnt move " + partial.getData().getName() + " to " + output.getName());
+            }
+            partial.complete();
+        } catch (Exception e) {
+            if (!partial.isResumable()) {
+                partial.delete();
+            }
+            throw e;
+        } finally {
+            data.close();
+
+            if (fos != null) {
+                fos.close();
+            }
+        }
+    }
+
+    /**
+     * Sync a written file to the storage according to the durability of the cache
+     * @param fos stream of the written file
+     * @throws IOException if it couldnt be synced
+     */
+    @WorkerThread
+    private void sync(@NonNull FileOutputStream fos) throws IOException {
+        switch (durability) {
+            case DATA:
+                fos.getChannel().force(false);
+                break;
+            case FULL:
+                fos.getFD().sync();
+                break;
+            case NONE:
+            default:
+                break;
+        }
+    }
+
     /**
      * Cache the data with the given key.
      * This method uses the Files to create a hashed file of the key and not use the key
@@ -107,23 +299,145 @@ public class DiskCache implements Cache {
     @Override
     @WorkerThread
     public File put(@NonNull Uri key, @NonNull InputStream data) throws Exception {
-        File file = Files.create(getContext(), key);
+        return put(key, Okio.buffer(Okio.source(data)));
+    }
+
+    /**
+     * Cache the data of a source with the given key.
+     * This method uses the Files to create a hashed file of the key and not use the key
+     * directly (for security measures).
+     *
+     * @param key key which will be used in every other transaction to retreive the data
+     * @param data source with the image data
+     * @return File with the data stored for the given key
+     * @throws Exception
+     */
+    @Override
+    @WorkerThread
+    public File put(@NonNull Uri key, @NonNull BufferedSource data) throws Exception {
+        File file = getFile(key);
+        Files.createParent(file);
         write(file, data);
 
-        lruCounter.add(file);
-        lruCounter.evict();
+        lruCounter.put(file);
+
+        return file;
+    }
+
+    /**
+     * Get the partial download of a key, if any.
+     * @param key of the resource
+     * @return partial download or null if theres none
+     */
+    @Override
+    @WorkerThread
+    public @Nullable Partial getPartial(@NonNull Uri key) {
+        return Partial.read(getFile(key));
+    }
+
+    /**
+     * Cache the data of a source with the given key, which continues (or starts) a partial download.
+     *
+     * @param key key which will be used in every other transaction to retreive the data
+     * @param data source with the remaining bytes of the image
+     * @param offset where the source starts. If its 0 any previous partial download is discarded
+     * @param validator ETag or Last-Modified of the response, null if it has none
+     * @param totalLength of the whole image, or -1 if unknown
+     * @return File with the data stored for the given key
+     * @throws Exception if it couldnt be written or its incomplete
+     */
+    @Override
+    @WorkerThread
+    public File put(@NonNull Uri key, @NonNull BufferedSource data, long offset,
+                    @Nullable String validator, long totalLength) throws Exception {
+        File file = getFile(key);
+        Files.createParent(file);
+
+        Partial partial;
+        if (offset > 0) {
+            partial = Partial.read(file);
+
+            if (partial == null || partial.getLength() != offset) {
+                //What we have doesnt match what the server continued, start again next time
+                if (partial != null) {
+                    partial.delete();
+                }
+                data.close();
+                throw new IOException("Partial download of " + file.getName() + " doesnt end at " + offset);
+            }
+        } else {
+            partial = Partial.begin(file, validator, totalLength);
+        }
+
+        append(file, partial, data);
+
+        lruCounter.put(file);
 
         return file;
     }
 
+    /**
+     * Get the validators and freshness of a cached key
+     * @param key key which will be used in every other transaction
+     * @return metadata or null if its not cached or it has none
+     */
+    @Override
+    @WorkerThread
+    public @Nullable Metadata getMetadata(@NonNull Uri key) {
+        return lruCounter.getMetadata(getFile(key));
+    }
+
+    /**
+     * Set the validators and freshness of a cached key. They are persisted in the journal
+     * @param key key which will be used in every other transaction
+     * @param metadata of the resource
+     */
+    @Override
+    @WorkerThread
+    public void putMetadata(@NonNull Uri key, @NonNull Metadata metadata) {
+        lruCounter.setMetadata(getFile(key), metadata);
+    }
+
+    /**
+     * Place a key in a partition. Its persisted in the journal
+     * @param key of the resource
+     * @param partition name
+     */
+    @Override
+    @WorkerThread
+    public void assign(@NonNull Uri key, @NonNull String partition) {
+        lruCounter.assign(getFile(key), partition);
+    }
+
+    /**
+     * Pin a key, so its never evicted. Its persisted in the journal
+     * @param key of the resource
+     */
+    @Override
+    @WorkerThread
+    public void pin(@NonNull Uri key) {
+        lruCounter.setPinned(getFile(key), true);
+    }
+
+    /**
+     * Unpin a key, so it can be evicted again
+     * @param key of the resource
+     */
+    @Override
+    @WorkerThread
+    public void unpin(@NonNull Uri key) {
+        lruCounter.setPinned(getFile(key), false);
+    }
+
     /**
      * Method for knowing if a key is or not in the cache
      * @param key key which will be used in every other transaction
      * @return true if exists, false otherwise.
      */
     @Override
+    @WorkerThread
     public boolean contains(@NonNull Uri key) {
-        return Files.create(getContext(), key).exists();
+        return getFile(key).exists();
     }
 
     /**
@@ -132,8 +446,9 @@ public class DiskCache implements Cache {
      * @return File if exists, null otherwise
      */
     @Override
+    @WorkerThread
     public @Nullable File get(@NonNull Uri key) {
-        File file = Files.create(getContext(), key);
+        File file = getFile(key);
 
         if (file.exists()) {
             lruCounter.add(file);
@@ -166,6 +481,26 @@ public class DiskCache implements Cache {
         deleteAllIn(Files.createDir(getContext()));
     }
 
+    /**
+     * Durability levels for the written files. A file is always renamed into the cache once
+     * its fully written, so a process death never leaves a truncated file. This only changes
+     * what survives an OS crash or a power loss.
+     */
+    public enum Durability {
+        /**
+         * Dont sync, the OS will write the file whenever it wants. Fastest.
+         */
+        NONE,
+        /**
+         * Sync the file contents before renaming it into the cache.
+         */
+        DATA,
+        /**
+         * Sync the file contents and its metadata before renaming it into the cache. Slowest.
+         */
+        FULL
+    }
+
     /**
      * Recursive method for deleting files in inner dirs too.
      * @param file to delete or if its a dir, recursively call this
@@ -0,0 +1,200 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * Single dispatcher of results to the main thread, shared by the whole pipeline.
+ *
+ * Instead of posting a message for each result, results arriving in the same frame are queued and
+ * delivered in bulk with a single message. Since Jelly Bean its aligned to the Choreographer frames,
+ * so the callbacks run right before the next frame is drawn, before it its a plain Handler message.
+ * If no frame comes soon (eg. the screen is off) a Handler message delivers them anyway, so
+ * background work doesnt stall waiting for a vsync.
+ *
+ * This way a prefetch of 100 resources completing at the same time doesnt flood the message queue.
+ */
+final class Dispatcher implements Runnable {
+
+    private static final Dispatcher instance = new Dispatcher();
+
+    //Max time results wait for a frame before being delivered without it
+    private static final long FRAME_TIMEOUT_MILLIS = 50;
+
+    private final @NonNull Handler mainHandler;
+    private final @NonNull Object lock;
+
+    /**
+     * Pending results, and the ones being delivered. They are swapped on each drain so no
+     * list is allocated per batch
+     */
+    private @NonNull ArrayList<Runnable> pending;
+    private @NonNull ArrayList<Runnable> running;
+
+    //If theres already a drain scheduled for the pending results
+    private boolean scheduled;
+    //If theres a drain at the front of the queue, for results that shouldnt wait for the frame
+    private boolean urgent;
+
+    //Frame callback, only used since Jelly Bean. Its created in the main thread
+    private volatile FrameDispatch frameDispatch;
+
+    /**
+     * Private constructor, use get()
+     */
+    private Dispatcher() {
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.lock = new Object();
+        this.pending = new ArrayList<>();
+        this.running = new ArrayList<>();
+        this.scheduled = false;
+        this.urgent = false;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            //The choreographer belongs to the looper of the thread that gets it, so ask for it there
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    frameDispatch = new FrameDispatch(Dispatcher.this);
+                }
+            });
+        }
+    }
+
+    /**
+     * Get the shared dispatcher
+     * @return dispatcher of the main thread
+     */
+    static @NonNull Dispatcher get() {
+        return instance;
+    }
+
+    /**
+     * Deliver a result in the main thread, in the next frame along with the others of it
+     * @param runnable to run in the main thread
+     */
+    void post(@NonNull Runnable runnable) {
+        synchronized (lock) {
+            pending.add(runnable);
+
+            if (scheduled) {
+                return;
+            }
+
+            scheduled = true;
+        }
+
+        FrameDispatch frame = frameDispatch;
+        if (frame != null) {
+            frame.schedule();
+            mainHandler.postDelayed(this, FRAME_TIMEOUT_MILLIS);
+        } else {
+            mainHandler.post(this);
+        }
+    }
+
+    /**
+     * Deliver a result in the main thread as soon as possible, without waiting for the frame.
+     * Used for results that didnt need the network (eg. cache hits), which should show right away.
+     *
+     * The results already pending are delivered with it.
+     *
+     * @param runnable to run in the main thread
+     */
+    void postAtFrontOfQueue(@NonNull Runnable runnable) {
+        synchronized (lock) {
+            pending.add(runnable);
+
+            if (urgent) {
+                return;
+            }
+
+            urgent = true;
+            scheduled = true;
+        }
+
+        mainHandler.postAtFrontOfQueue(this);
+    }
+
+    /**
+     * Deliver all the pending results. The other ways it was scheduled (the frame, the fallback
+     * or an urgent one) are canceled, since they would find nothing to do.
+     */
+    @MainThread
+    @Override
+    public void run() {
+        //Canceled before taking the results, so whatever scheduled them is already pending and
+        //delivered now. Its done outside the lock, posting shouldnt wait for the message queue
+        mainHandler.removeCallbacks(this);
+        FrameDispatch frame = frameDispatch;
+        if (frame != null) {
+            frame.cancel();
+        }
+
+        ArrayList<Runnable> batch;
+
+        synchronized (lock) {
+            batch = pending;
+            pending = running;
+            running = batch;
+            scheduled = false;
+            urgent = false;
+        }
+
+        //Only the main thread uses the running list, so it can be iterated without the lock
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).run();
+        }
+
+        batch.clear();
+    }
+
+    /**
+     * Choreographer frame callback that drains the dispatcher. Its a separate class so the
+     * Choreographer isnt loaded before Jelly Bean
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class FrameDispatch implements Choreographer.FrameCallback {
+
+        private final @NonNull Dispatcher dispatcher;
+        private final @NonNull Choreographer choreographer;
+
+        /**
+         * Constructor. Must be created in the main thread
+         * @param dispatcher to drain in each frame
+         */
+        @MainThread
+        FrameDispatch(@NonNull Dispatcher dispatcher) {
+            this.dispatcher = dispatcher;
+            this.choreographer = Choreographer.getInstance();
+        }
+
+        /**
+         * Drain the dispatcher in the next frame. Can be called from any thread
+         */
+        void schedule() {
+            choreographer.postFrameCallback(this);
+        }
+
+        /**
+         * Stop waiting for the next frame, if it was scheduled
+         */
+        void cancel() {
+            choreographer.removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            dispatcher.run();
+        }
+
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Policy that decides which entry of the DiskCache is evicted when it runs out of space.
+ *
+ * The cache notifies the policy of every entry added, accessed and removed, and asks it for a victim
+ * while it needs room. Calls are serialized by the cache, so implementations dont need to be thread safe.
+ *
+ * Shipped implementations are LruPolicy (the default), LfuPolicy, GreedyDualSizePolicy and
+ * TinyLfuPolicy.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Set the max size of the cache. Called before any other method
+     * @param maxSize in bytes of the cache
+     */
+    void setMaxSize(long maxSize);
+
+    /**
+     * An entry was added to the cache
+     * @param key of the entry
+     * @param size in bytes of the entry
+     */
+    void onAdd(@NonNull String key, long size);
+
+    /**
+     * An entry of the cache was accessed (or replaced by a new version)
+     * @param key of the entry
+     * @param size in bytes of the entry, which could have changed
+     */
+    void onAccess(@NonNull String key, long size);
+
+    /**
+     * An entry was removed from the cache. It might not be known by the policy
+     * @param key of the entry
+     */
+    void onRemove(@NonNull String key);
+
+    /**
+     * Get the entry that should be evicted next. Its not removed until onRemove is called
+     * @return key of the entry, or null if theres none
+     */
+    @Nullable String victim();
+
+    /**
+     * Forget all the entries
+     */
+    void clear();
+
+}
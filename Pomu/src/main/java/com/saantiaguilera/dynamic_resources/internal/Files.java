@@ -5,8 +5,11 @@ import android.net.Uri;
 import android.support.annotation.NonNull;
 
 import java.io.File;
-import java.math.BigInteger;
+import java.io.IOException;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by saguilera on 8/25/16.
@@ -16,59 +19,358 @@ final class Files {
     //Default dir where the files will be stored. This isnt hashed.
     private static final String DEFAULT_DIR = "dynamic-resources";
 
+    //Journal of the cache. Its outside the dir so it doesnt get tracked or wiped as a resource
+    private static final String JOURNAL = DEFAULT_DIR + ".journal";
+
+    //Layout of the dir the files are stored in. Its outside the dir too
+    private static final String LAYOUT = DEFAULT_DIR + ".layout";
+
+    //Levels of subdirs the files are spread in, and the max supported
+    static final int DEFAULT_DEPTH = 1;
+    static final int MAX_DEPTH = 4;
+
+    //Chars of the hash used for the subdir of each level, so each level has up to 256 subdirs
+    private static final int SHARD_WIDTH = 2;
+
     //Hash mode
     private static final String HASH = "MD5";
 
-    //Radix for the hash
-    private static final int STRING_RADIX_REPRESENTATION = 16;
+    //Chars of the hex representation of the hash. Its fixed width, leading zeros are kept
+    static final int HASH_LENGTH = 32;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    //Digests arent thread safe, but creating one for each hash is expensive, so each thread reuses its own
+    private static final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance(HASH);
+            } catch (NoSuchAlgorithmException e) {
+                return null;
+            }
+        }
+    };
+
+    //Buffer where the hash is encoded, reused by each thread
+    private static final ThreadLocal<char[]> hexBuffers = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[HASH_LENGTH];
+        }
+    };
+
+    //Dir where the resources lay, once its created. Its only reused for contexts with the same files dir
+    private static volatile File dir;
 
     //Default extension in case image doesnt has one
     private static final String DEFAULT_EXTENSION = ".jpg";
 
+    //Longest extension taken from an uri, anything longer isnt one (eg. "/v1.0-beta")
+    private static final int MAX_EXTENSION_LENGTH = 8;
+
+    //Suffix of the files that are still being written
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    //Suffixes of the downloads that didnt finish, and their state
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final String PARTIAL_META_SUFFIX = PARTIAL_SUFFIX + ".meta";
+
     /**
-     * Hash a string using HASH mode.
+     * Hash a string using HASH mode, as a fixed width hex string.
      * @param name string to hash
      * @return string with the hashed name
      */
     private static @NonNull String hash(@NonNull String name) {
-        try {
-            MessageDigest m = MessageDigest.getInstance(HASH);
-            m.update(name.getBytes());
-            byte[] digest = m.digest();
-            BigInteger bigInt = new BigInteger(1, digest);
-            return bigInt.toString(STRING_RADIX_REPRESENTATION);
-        } catch (Exception e) {
+        MessageDigest m = digests.get();
+        if (m == null) {
             return name;
         }
+
+        byte[] digest = m.digest(name.getBytes());
+
+        char[] hex = hexBuffers.get();
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+
+        return new String(hex, 0, digest.length * 2);
     }
 
     /**
-     * Strip the extension from a path
-     * @param path to get the extension from
-     * @return string with the extension of the path
+     * Older versions dropped the leading zeros of the hash, so some names are shorter than HASH_LENGTH.
+     * Pad them back, so they match the name their uri has now. Temporary and partial files are padded too,
+     * since they start with the name of their target
+     *
+     * @param name of a file in the dir
+     * @return name with the full hash, the same name if it already had it
+     */
+    static @NonNull String normalize(@NonNull String name) {
+        int length = 0;
+        while (length < name.length() && Character.digit(name.charAt(length), 16) >= 0) {
+            length++;
+        }
+
+        if (length == 0 || length >= HASH_LENGTH || length == name.length() || name.charAt(length) != '.') {
+            //Its not a hash followed by the extension, or its complete
+            return name;
+        }
+
+        StringBuilder builder = new StringBuilder(name.length() + HASH_LENGTH - length);
+        for (int i = length; i < HASH_LENGTH; i++) {
+            builder.append('0');
+        }
+
+        return builder.append(name).toString();
+    }
+
+    /**
+     * Check if a file in the dir is named and placed like an entry of the cache: its name is a hash (maybe
+     * without the leading zeros older versions dropped) followed by the extension, and it lays in the root
+     * or in the subdirs of a layout. Older versions took the extension from the whole uri, nesting some
+     * files in dirs named after its path or naming them with its query (eg. "hash.png?size=2"), those arent
+     * entries since they cant be mapped back to their uri.
+     *
+     * @param dir root of the resources
+     * @param file inside the dir
+     * @return true if its an entry
      */
-    private static @NonNull String stripExtension(@NonNull String path) {
-        try {
-            return path.substring(path.lastIndexOf("."));
-        } catch (IndexOutOfBoundsException e) {
+    static boolean isEntry(@NonNull File dir, @NonNull File file) {
+        String name = file.getName();
+        if (isPartial(file)) {
+            //A download that didnt finish, named after its entry
+            name = name.substring(0, name.lastIndexOf(PARTIAL_SUFFIX));
+        }
+
+        int length = 0;
+        while (length < name.length() && Character.digit(name.charAt(length), 16) >= 0) {
+            length++;
+        }
+
+        if (length == 0 || length > HASH_LENGTH || !isExtension(name, length)) {
+            return false;
+        }
+
+        List<String> subdirs = new ArrayList<>(MAX_DEPTH);
+        File parent = file.getParentFile();
+        while (parent != null && !parent.equals(dir)) {
+            subdirs.add(parent.getName());
+            parent = parent.getParentFile();
+        }
+
+        if (parent == null || subdirs.size() > MAX_DEPTH) {
+            return false;
+        }
+
+        //The outermost subdir is the first level
+        String normalized = normalize(name);
+        for (int level = 0; level < subdirs.size(); level++) {
+            String subdir = subdirs.get(subdirs.size() - 1 - level);
+
+            if (subdir.length() != SHARD_WIDTH || !normalized.startsWith(subdir, level * SHARD_WIDTH)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the extension of an uri. Its only taken from its last path segment (so the host, the query or
+     * a dir with a dot arent mistaken for one), and only if its alphanumeric, since its part of the name
+     * of the file. Else the default one is used.
+     *
+     * @param uri to get the extension from
+     * @return string with the extension of the uri, with its dot
+     */
+    static @NonNull String getExtension(@NonNull Uri uri) {
+        String segment = uri.getLastPathSegment();
+        if (segment == null) {
             return DEFAULT_EXTENSION;
         }
+
+        int dot = segment.lastIndexOf('.');
+        if (dot < 0 || !isExtension(segment, dot)) {
+            return DEFAULT_EXTENSION;
+        }
+
+        return segment.substring(dot);
+    }
+
+    /**
+     * Check if the end of a name is an extension we would take from an uri: a dot followed by up to
+     * MAX_EXTENSION_LENGTH alphanumeric chars
+     *
+     * @param name to check
+     * @param dot index where the extension should start
+     * @return true if its an extension
+     */
+    private static boolean isExtension(@NonNull String name, int dot) {
+        int length = name.length() - dot - 1;
+        if (dot >= name.length() || name.charAt(dot) != '.' || length == 0 || length > MAX_EXTENSION_LENGTH) {
+            return false;
+        }
+
+        for (int i = dot + 1; i < name.length(); i++) {
+            if (!Character.isLetterOrDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     /**
-     * Package access method to create the directory were the resources will lay
+     * Package access method to create the directory were the resources will lay.
+     * Its only created once, later calls with a context of the same files dir return the same handle
+     * without touching the disk. If its deleted afterwards (eg. clearing the cache), writes create it
+     * again along with their subdir.
+     *
      * @param context with resources access
      * @return File pointing to the dir
      */
     static @NonNull File createDir(@NonNull Context context) {
-        File dir = new File(context.getFilesDir(), DEFAULT_DIR);
-        if (!dir.isDirectory()) {
-            if (!dir.mkdirs()) {
+        File filesDir = context.getFilesDir();
+
+        File current = dir;
+        if (current != null && filesDir.equals(current.getParentFile())) {
+            return current;
+        }
+
+        current = new File(filesDir, DEFAULT_DIR);
+        if (!current.isDirectory()) {
+            if (!current.mkdirs() && !current.isDirectory()) {
                 throw new IllegalStateException("Couldnt create directory for resources, missing some permissions?");
             }
         }
 
-        return dir;
+        dir = current;
+        return current;
+    }
+
+    /**
+     * Package access method to get the file where the cache journal lays
+     * @param context with resources access
+     * @return File pointing to the journal
+     */
+    static @NonNull File createJournal(@NonNull Context context) {
+        return new File(context.getFilesDir(), JOURNAL);
+    }
+
+    /**
+     * Package access method to get the file where the layout of the dir is persisted
+     * @param context with resources access
+     * @return File pointing to the layout
+     */
+    static @NonNull File createLayout(@NonNull Context context) {
+        return new File(context.getFilesDir(), LAYOUT);
+    }
+
+    /**
+     * Get where a file with the given name lays in a dir spread in subdirs. Each level is named after
+     * the next chars of the name (which starts with its hash), eg. with depth 2 "abcdef.jpg" lays
+     * in "ab/cd/abcdef.jpg".
+     *
+     * Since temporary and partial files start with the name of their target, they lay next to it.
+     *
+     * @param dir root of the resources
+     * @param name of the file
+     * @param depth levels of subdirs
+     * @return File where it lays
+     */
+    static @NonNull File resolve(@NonNull File dir, @NonNull String name, int depth) {
+        if (name.length() < depth * SHARD_WIDTH) {
+            //Cant be spread, keep it in the root
+            return new File(dir, name);
+        }
+
+        File parent = dir;
+        for (int level = 0; level < depth; level++) {
+            parent = new File(parent, name.substring(level * SHARD_WIDTH, (level + 1) * SHARD_WIDTH));
+        }
+
+        return new File(parent, name);
+    }
+
+    /**
+     * Create the subdir where a file will be written, if it doesnt exist
+     * @param target file that will be written
+     * @throws IOException if it couldnt be created
+     */
+    static void createParent(@NonNull File target) throws IOException {
+        File parent = target.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Couldnt create directory " + parent.getName() + " for " + target.getName());
+        }
+    }
+
+    /**
+     * Recursively list all the files (not the dirs) inside a dir
+     * @param dir to list
+     * @param out where the files are added
+     */
+    static void list(@NonNull File dir, @NonNull List<File> out) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+
+        for (File child : children) {
+            if (child.isDirectory()) {
+                list(child, out);
+            } else {
+                out.add(child);
+            }
+        }
+    }
+
+    /**
+     * Create a new unique temporary file next to the given one, where its data can be written
+     * before moving it into place.
+     *
+     * @param target file that will be replaced by the temporary one once written
+     * @return File a new empty temporary file
+     * @throws IOException if it couldnt be created
+     */
+    static @NonNull File createTemp(@NonNull File target) throws IOException {
+        return File.createTempFile(target.getName(), TEMP_SUFFIX, target.getParentFile());
+    }
+
+    /**
+     * Check if a file is a temporary one, meaning its not (yet) a valid resource
+     * @param file to check
+     * @return true if its a temporary file
+     */
+    static boolean isTemp(@NonNull File file) {
+        return file.getName().endsWith(TEMP_SUFFIX);
+    }
+
+    /**
+     * Get the file where the received bytes of a download that didnt finish are kept
+     * @param target file where the complete resource will be
+     * @return File for the partial data
+     */
+    static @NonNull File createPartial(@NonNull File target) {
+        return new File(target.getParentFile(), target.getName() + PARTIAL_SUFFIX);
+    }
+
+    /**
+     * Get the file where the state of a download that didnt finish is kept
+     * @param target file where the complete resource will be
+     * @return File for the partial state
+     */
+    static @NonNull File createPartialMeta(@NonNull File target) {
+        return new File(target.getParentFile(), target.getName() + PARTIAL_META_SUFFIX);
+    }
+
+    /**
+     * Check if a file belongs to a download that didnt finish, meaning its not (yet) a valid resource
+     * @param file to check
+     * @return true if its a partial file
+     */
+    static boolean isPartial(@NonNull File file) {
+        return file.getName().endsWith(PARTIAL_SUFFIX) || file.getName().endsWith(PARTIAL_META_SUFFIX);
     }
 
     /**
@@ -76,11 +378,12 @@ final class Files {
      *
      * @param context with resource access
      * @param uri for the given file
+     * @param depth levels of subdirs the files are spread in
      * @return File for the given uri
      */
-    public static @NonNull File create(Context context, Uri uri) {
-        String url = hash(uri.toString()) + stripExtension(uri.toString());
-        return new File(createDir(context), url);
+    public static @NonNull File create(Context context, Uri uri, int depth) {
+        String url = hash(uri.toString()) + getExtension(uri);
+        return resolve(createDir(context), url, depth);
     }
 
 }
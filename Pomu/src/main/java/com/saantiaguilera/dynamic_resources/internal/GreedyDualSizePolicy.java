@@ -0,0 +1,144 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Size aware policy (GreedyDual-Size with frequency). Each entry has a priority of
+ * L + frequency / size, and the one with the lowest is evicted. L is the priority of the last evicted
+ * entry, so entries that arent used anymore age and end up being evicted, no matter how small.
+ *
+ * Since the priority is divided by the size, a huge one-off download is evicted long before the small
+ * entries used all the time, making the cache hold more entries (and hit more often) for the same space.
+ * The counterpart is that big entries used as often as small ones hit less.
+ */
+public class GreedyDualSizePolicy implements EvictionPolicy {
+
+    private final @NonNull Map<String, Node> nodes;
+    private final @NonNull TreeSet<Node> queue;
+
+    //Priority of the last evicted entry, the cache ages with it
+    private double inflation;
+
+    //Insertion sequence, to break ties by recency
+    private long sequence;
+
+    /**
+     * Constructor
+     */
+    public GreedyDualSizePolicy() {
+        this.nodes = new HashMap<>();
+        this.queue = new TreeSet<>();
+        this.inflation = 0;
+        this.sequence = 0;
+    }
+
+    @Override
+    public void setMaxSize(long maxSize) {
+        //Priorities are relative to the entries
+    }
+
+    @Override
+    public void onAdd(@NonNull String key, long size) {
+        Node node = nodes.get(key);
+
+        if (node != null) {
+            onAccess(key, size);
+            return;
+        }
+
+        node = new Node(key);
+        node.frequency = 1;
+        update(node, size);
+        nodes.put(key, node);
+    }
+
+    @Override
+    public void onAccess(@NonNull String key, long size) {
+        Node node = nodes.get(key);
+
+        if (node == null) {
+            onAdd(key, size);
+            return;
+        }
+
+        queue.remove(node);
+        node.frequency++;
+        update(node, size);
+    }
+
+    @Override
+    public void onRemove(@NonNull String key) {
+        Node node = nodes.remove(key);
+
+        if (node == null) {
+            return;
+        }
+
+        if (node == queue.first()) {
+            //Its being evicted, age the rest
+            inflation = node.priority;
+        }
+
+        queue.remove(node);
+    }
+
+    @Override
+    public @Nullable String victim() {
+        if (queue.isEmpty()) {
+            return null;
+        }
+
+        return queue.first().key;
+    }
+
+    @Override
+    public void clear() {
+        nodes.clear();
+        queue.clear();
+        inflation = 0;
+    }
+
+    /**
+     * Recalculate the priority of a node and queue it
+     * @param node to update, not queued
+     * @param size in bytes of the entry
+     */
+    private void update(@NonNull Node node, long size) {
+        node.priority = inflation + node.frequency / (double) Math.max(1, size);
+        node.sequence = sequence++;
+        queue.add(node);
+    }
+
+    /**
+     * Entry of the policy, ordered by priority and then by recency
+     */
+    private static final class Node implements Comparable<Node> {
+
+        final @NonNull String key;
+        int frequency;
+        double priority;
+        long sequence;
+
+        Node(@NonNull String key) {
+            this.key = key;
+        }
+
+        @Override
+        public int compareTo(@NonNull Node other) {
+            int compare = Double.compare(priority, other.priority);
+
+            if (compare == 0) {
+                compare = sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+            }
+
+            return compare;
+        }
+
+    }
+
+}
@@ -0,0 +1,528 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Append-only binary log of the operations done to the disk cache.
+ *
+ * Each access, put or remove appends a small fixed layout record (op, time, size and file key, which
+ * is its path relative to the dir of the resources) to the end of the file, so tracking an access costs a few bytes instead of rewriting a whole
+ * store. When the log holds too many redundant records it gets compacted to one record per
+ * live entry.
+ *
+ * Metadata records carry, after the fixed layout, the validators and expiration of an entry.
+ * Placement records carry the partition of an entry and if its pinned.
+ *
+ * On startup the log is replayed to recover the last access time (and metadata) of each entry.
+ * Since a compacted journal is a snapshot of the index, loading it is a single sequential read, and
+ * compacting it works as a checkpoint of the index.
+ */
+final class Journal {
+
+    //Operations supported by the journal
+    static final byte OP_PUT = 1;
+    static final byte OP_ACCESS = 2;
+    static final byte OP_REMOVE = 3;
+    static final byte OP_META = 4;
+    static final byte OP_PLACE = 5;
+
+    //Header of the file, if it doesnt match the journal is discarded
+    private static final int MAGIC = 0x504f4d55; // "POMU"
+    private static final int VERSION = 2;
+
+    //Version without metadata and placement records, it can still be read
+    private static final int VERSION_1 = 1;
+
+    //Buffer for replaying the journal, big enough to read a compacted one in a few sequential reads
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    //Minimum amount of redundant records before compacting
+    private static final int COMPACT_THRESHOLD = 1000;
+
+    private @NonNull File file;
+    private DataOutputStream output;
+
+    private int records;
+    private int liveEntries;
+
+    //Once closed nothing is written to the file anymore
+    private boolean closed;
+
+    /**
+     * Constructor
+     * @param file where the journal is persisted
+     */
+    Journal(@NonNull File file) {
+        this.file = file;
+        this.output = null;
+        this.records = 0;
+        this.liveEntries = 0;
+        this.closed = false;
+    }
+
+    /**
+     * Read all the records of the journal and fold them into the live entries.
+     * If the journal is corrupted (eg. the process died while appending) all the records
+     * until the corrupted one are still returned.
+     *
+     * @return map of file keys with their last known state, in the order they were first seen
+     */
+    @WorkerThread
+    synchronized @NonNull Map<String, Entry> replay() {
+        final Map<String, Entry> entries = new LinkedHashMap<>();
+
+        read(file, new Visitor() {
+            @Override
+            public void onRecord(byte op, long time, long size, @NonNull String name,
+                                 @Nullable Metadata metadata, @Nullable Placement placement) {
+                switch (op) {
+                    case OP_PUT:
+                        Entry replaced = entries.get(name);
+                        if (replaced != null) {
+                            //A new version of the file, it keeps its metadata and placement
+                            replaced.time = time;
+                            replaced.size = size;
+                        } else {
+                            entries.put(name, new Entry(time, size));
+                        }
+                        break;
+                    case OP_ACCESS:
+                        Entry entry = entries.get(name);
+                        if (entry != null) {
+                            entry.time = time;
+                        } else {
+                            entries.put(name, new Entry(time, size));
+                        }
+                        break;
+                    case OP_REMOVE:
+                        entries.remove(name);
+                        break;
+                    case OP_META:
+                        Entry described = entries.get(name);
+                        if (described != null) {
+                            described.metadata = metadata;
+                        }
+                        break;
+                    case OP_PLACE:
+                        Entry placed = entries.get(name);
+                        if (placed != null) {
+                            placed.placement = placement;
+                        }
+                        break;
+                }
+            }
+        });
+
+        return entries;
+    }
+
+    /**
+     * Read all the records of a journal, in the order they were appended.
+     * If the journal is corrupted (eg. the process died while appending) all the records
+     * until the corrupted one are still visited.
+     *
+     * @param file of the journal
+     * @param visitor of the records
+     */
+    @WorkerThread
+    static void read(@NonNull File file, @NonNull Visitor visitor) {
+        if (!file.exists()) {
+            return;
+        }
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), READ_BUFFER_SIZE));
+
+            if (input.readInt() != MAGIC) {
+                return;
+            }
+
+            int version = input.readInt();
+            if (version != VERSION && version != VERSION_1) {
+                return;
+            }
+            byte lastOp = version == VERSION_1 ? OP_REMOVE : OP_PLACE;
+
+            while (true) {
+                byte op = input.readByte();
+                long time = input.readLong();
+                long size = input.readLong();
+                String name = input.readUTF();
+
+                if (op < OP_PUT || op > lastOp) {
+                    //Unknown record, the rest of the journal cant be trusted
+                    return;
+                }
+
+                visitor.onRecord(op, time, size, name,
+                        op == OP_META ? readMetadata(input, time) : null,
+                        op == OP_PLACE ? readPlacement(input) : null);
+            }
+        } catch (EOFException e) {
+            //End of the journal (or a truncated record), everything read is valid
+        } catch (IOException e) {
+            //Keep what we could read
+        } finally {
+            close(input);
+        }
+    }
+
+    /**
+     * Append a record to the journal.
+     *
+     * @param op one of OP_PUT, OP_ACCESS or OP_REMOVE
+     * @param name of the file in the cache
+     * @param time of the operation
+     * @param size of the file in bytes
+     */
+    @WorkerThread
+    synchronized void append(byte op, @NonNull String name, long time, long size) {
+        try {
+            DataOutputStream out = getOutput();
+            out.writeByte(op);
+            out.writeLong(time);
+            out.writeLong(size);
+            out.writeUTF(name);
+            out.flush();
+
+            records++;
+            if (op == OP_PUT) {
+                liveEntries++;
+            } else if (op == OP_REMOVE) {
+                liveEntries--;
+            }
+        } catch (IOException e) {
+            //Losing a record only degrades the recency of an entry, drop the stream and retry later
+            close(output);
+            output = null;
+        }
+    }
+
+    /**
+     * Append a metadata record to the journal.
+     *
+     * @param name of the file in the cache
+     * @param size of the file in bytes
+     * @param metadata of the file
+     */
+    @WorkerThread
+    synchronized void appendMetadata(@NonNull String name, long size, @NonNull Metadata metadata) {
+        try {
+            DataOutputStream out = getOutput();
+            writeMetadata(out, name, size, metadata);
+            out.flush();
+
+            records++;
+        } catch (IOException e) {
+            //Losing a record only makes the entry be downloaded again, drop the stream and retry later
+            close(output);
+            output = null;
+        }
+    }
+
+    /**
+     * Append a placement record to the journal.
+     *
+     * @param name of the file in the cache
+     * @param size of the file in bytes
+     * @param placement of the file
+     */
+    @WorkerThread
+    synchronized void appendPlacement(@NonNull String name, long size, @NonNull Placement placement) {
+        try {
+            DataOutputStream out = getOutput();
+            writePlacement(out, name, size, placement);
+            out.flush();
+
+            records++;
+        } catch (IOException e) {
+            //Losing a record only makes the entry go back to the default partition, drop the stream and retry later
+            close(output);
+            output = null;
+        }
+    }
+
+    /**
+     * Write a placement record
+     * @param out where its written
+     * @param name of the file in the cache
+     * @param size of the file in bytes
+     * @param placement of the file
+     * @throws IOException if it couldnt be written
+     */
+    private static void writePlacement(@NonNull DataOutputStream out, @NonNull String name,
+                                       long size, @NonNull Placement placement) throws IOException {
+        out.writeByte(OP_PLACE);
+        out.writeLong(System.currentTimeMillis());
+        out.writeLong(size);
+        out.writeUTF(name);
+        out.writeUTF(placement.partition == null ? "" : placement.partition);
+        out.writeBoolean(placement.pinned);
+    }
+
+    /**
+     * Read the trailing part of a placement record
+     * @param input where its read
+     * @return placement of the record
+     * @throws IOException if it couldnt be read
+     */
+    private static @NonNull Placement readPlacement(@NonNull DataInputStream input) throws IOException {
+        String partition = input.readUTF();
+        boolean pinned = input.readBoolean();
+
+        return new Placement(partition.isEmpty() ? null : partition, pinned);
+    }
+
+    /**
+     * Write a metadata record
+     * @param out where its written
+     * @param name of the file in the cache
+     * @param size of the file in bytes
+     * @param metadata of the file
+     * @throws IOException if it couldnt be written
+     */
+    private static void writeMetadata(@NonNull DataOutputStream out, @NonNull String name,
+                                      long size, @NonNull Metadata metadata) throws IOException {
+        out.writeByte(OP_META);
+        out.writeLong(metadata.getFetchedAt());
+        out.writeLong(size);
+        out.writeUTF(name);
+        out.writeUTF(metadata.getEtag() == null ? "" : metadata.getEtag());
+        out.writeUTF(metadata.getLastModified() == null ? "" : metadata.getLastModified());
+        out.writeLong(metadata.getExpiresAt());
+    }
+
+    /**
+     * Read the trailing part of a metadata record
+     * @param input where its read
+     * @param fetchedAt time of the record
+     * @return metadata of the record
+     * @throws IOException if it couldnt be read
+     */
+    private static @NonNull Metadata readMetadata(@NonNull DataInputStream input, long fetchedAt) throws IOException {
+        String etag = input.readUTF();
+        String lastModified = input.readUTF();
+        long expiresAt = input.readLong();
+
+        return new Metadata(etag.isEmpty() ? null : etag,
+                lastModified.isEmpty() ? null : lastModified,
+                fetchedAt, expiresAt);
+    }
+
+    /**
+     * Check if the journal has enough redundant records to be worth compacting
+     * @return true if it should be compacted
+     */
+    synchronized boolean shouldCompact() {
+        int redundant = records - liveEntries;
+        return redundant > COMPACT_THRESHOLD && redundant > liveEntries;
+    }
+
+    /**
+     * Rewrite the journal with a single record per live entry.
+     * The new journal is written aside and renamed over the old one, so a crash in the middle
+     * leaves the previous journal intact.
+     *
+     * @param entries live entries of the cache, mapped by their file key
+     */
+    @WorkerThread
+    synchronized void compact(@NonNull Map<String, Entry> entries) {
+        if (closed) {
+            return;
+        }
+
+        close(output);
+        output = null;
+
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            int written = 0;
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeByte(OP_PUT);
+                out.writeLong(entry.getValue().time);
+                out.writeLong(entry.getValue().size);
+                out.writeUTF(entry.getKey());
+                written++;
+
+                if (entry.getValue().metadata != null) {
+                    writeMetadata(out, entry.getKey(), entry.getValue().size, entry.getValue().metadata);
+                    written++;
+                }
+
+                if (entry.getValue().placement != null) {
+                    writePlacement(out, entry.getKey(), entry.getValue().size, entry.getValue().placement);
+                    written++;
+                }
+            }
+
+            out.flush();
+            out.close();
+            out = null;
+
+            if (temp.renameTo(file)) {
+                records = written;
+                liveEntries = entries.size();
+            }
+        } catch (IOException e) {
+            //The old journal is still valid
+        } finally {
+            close(out);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+
+    /**
+     * Close the journal. Appending or compacting it afterwards does nothing, its still readable
+     */
+    synchronized void close() {
+        closed = true;
+        close(output);
+        output = null;
+    }
+
+    /**
+     * Lazily open the journal in append mode, writing the header if its a new one
+     * @return stream to append records
+     * @throws IOException if the journal cant be opened or its closed
+     */
+    private @NonNull DataOutputStream getOutput() throws IOException {
+        if (closed) {
+            throw new IOException("Journal " + file + " is closed");
+        }
+
+        if (output == null) {
+            boolean exists = file.exists() && file.length() > 0;
+
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+
+            if (!exists) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+            }
+        }
+
+        return output;
+    }
+
+    /**
+     * Quietly close a stream
+     * @param closeable to close
+     */
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                //Nothing to do
+            }
+        }
+    }
+
+    /**
+     * Visitor of the records of a journal
+     */
+    interface Visitor {
+
+        /**
+         * Visit a record
+         * @param op one of OP_PUT, OP_ACCESS, OP_REMOVE, OP_META or OP_PLACE
+         * @param time of the operation
+         * @param size of the file in bytes
+         * @param name of the file in the cache
+         * @param metadata of the file, only for OP_META
+         * @param placement of the file, only for OP_PLACE
+         */
+        void onRecord(byte op, long time, long size, @NonNull String name,
+                      @Nullable Metadata metadata, @Nullable Placement placement);
+
+    }
+
+    /**
+     * State of a file in the journal
+     */
+    static class Entry {
+
+        long time;
+        long size;
+        @Nullable Metadata metadata;
+        @Nullable Placement placement;
+
+        /**
+         * Constructor
+         * @param time when the file was last used/accessed
+         * @param size size of the file in bytes
+         */
+        Entry(long time, long size) {
+            this(time, size, null);
+        }
+
+        /**
+         * Constructor
+         * @param time when the file was last used/accessed
+         * @param size size of the file in bytes
+         * @param metadata of the file, if any
+         */
+        Entry(long time, long size, @Nullable Metadata metadata) {
+            this(time, size, metadata, null);
+        }
+
+        /**
+         * Constructor
+         * @param time when the file was last used/accessed
+         * @param size size of the file in bytes
+         * @param metadata of the file, if any
+         * @param placement of the file, if its not the default one
+         */
+        Entry(long time, long size, @Nullable Metadata metadata, @Nullable Placement placement) {
+            this.time = time;
+            this.size = size;
+            this.metadata = metadata;
+            this.placement = placement;
+        }
+
+    }
+
+    /**
+     * Partition of a file and if its pinned
+     */
+    static final class Placement {
+
+        final @Nullable String partition;
+        final boolean pinned;
+
+        /**
+         * Constructor
+         * @param partition of the file, null for the default one
+         * @param pinned if it cant be evicted
+         */
+        Placement(@Nullable String partition, boolean pinned) {
+            this.partition = partition;
+            this.pinned = pinned;
+        }
+
+    }
+
+}
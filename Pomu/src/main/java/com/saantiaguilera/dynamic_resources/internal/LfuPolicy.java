@@ -0,0 +1,123 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Evicts the least frequently used entry, and between the ones used as often the least recently used.
+ *
+ * Small entries used all the time survive bursts of one-off downloads, but entries that were popular
+ * a long time ago can stay forever. Frequencies arent persisted, after a restart all the entries
+ * start again from the same one (in recency order).
+ */
+public class LfuPolicy implements EvictionPolicy {
+
+    //Frequency of each entry
+    private final @NonNull Map<String, Integer> frequencies;
+
+    //Entries bucketed by frequency, each bucket in the order they reached it
+    private final @NonNull TreeMap<Integer, LinkedHashSet<String>> buckets;
+
+    /**
+     * Constructor
+     */
+    public LfuPolicy() {
+        this.frequencies = new HashMap<>();
+        this.buckets = new TreeMap<>();
+    }
+
+    @Override
+    public void setMaxSize(long maxSize) {
+        //Frequency doesnt depend on the size
+    }
+
+    @Override
+    public void onAdd(@NonNull String key, long size) {
+        if (frequencies.containsKey(key)) {
+            onAccess(key, size);
+            return;
+        }
+
+        frequencies.put(key, 1);
+        bucket(1).add(key);
+    }
+
+    @Override
+    public void onAccess(@NonNull String key, long size) {
+        Integer frequency = frequencies.get(key);
+
+        if (frequency == null) {
+            onAdd(key, size);
+            return;
+        }
+
+        unbucket(key, frequency);
+
+        //Avoid overflowing with entries used forever
+        int next = frequency == Integer.MAX_VALUE ? frequency : frequency + 1;
+        frequencies.put(key, next);
+        bucket(next).add(key);
+    }
+
+    @Override
+    public void onRemove(@NonNull String key) {
+        Integer frequency = frequencies.remove(key);
+
+        if (frequency != null) {
+            unbucket(key, frequency);
+        }
+    }
+
+    @Override
+    public @Nullable String victim() {
+        if (buckets.isEmpty()) {
+            return null;
+        }
+
+        return buckets.firstEntry().getValue().iterator().next();
+    }
+
+    @Override
+    public void clear() {
+        frequencies.clear();
+        buckets.clear();
+    }
+
+    /**
+     * Get the bucket of a frequency, creating it if needed
+     * @param frequency of the bucket
+     * @return bucket
+     */
+    private @NonNull LinkedHashSet<String> bucket(int frequency) {
+        LinkedHashSet<String> bucket = buckets.get(frequency);
+
+        if (bucket == null) {
+            buckets.put(frequency, bucket = new LinkedHashSet<>());
+        }
+
+        return bucket;
+    }
+
+    /**
+     * Remove an entry from its bucket, removing the bucket if it gets empty
+     * @param key of the entry
+     * @param frequency of the entry
+     */
+    private void unbucket(@NonNull String key, int frequency) {
+        LinkedHashSet<String> bucket = buckets.get(frequency);
+
+        if (bucket != null) {
+            bucket.remove(key);
+
+            if (bucket.isEmpty()) {
+                buckets.remove(frequency);
+            }
+        }
+    }
+
+}
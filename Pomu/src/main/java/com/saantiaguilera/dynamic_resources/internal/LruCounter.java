@@ -5,54 +5,105 @@ import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * Helper class for doin LRU in the disk cache.
+ * Helper class for doin LRU in the disk cache. Which file is evicted is decided by an EvictionPolicy,
+ * LRU by default.
+ *
+ * Files can be placed in named partitions, each with its own max size and policy, so big optional
+ * resources dont evict the critical ones. Files that arent placed (or whose partition wasnt declared)
+ * are in the default partition, which has the max size of the cache. Pinned files are never evicted,
+ * and they dont count for the size of any partition.
  *
  * Created by saguilera on 8/26/16.
  */
 class LruCounter {
 
-    //Shared preferences directory to count
-    private static final String SHARED_PREFERENCES_DIR = LruCounter.class.getName() + "dynamic-resources";
+    //Shared preferences directory where older versions tracked the accesses. Its only read to migrate them
+    private static final String LEGACY_SHARED_PREFERENCES_DIR = LruCounter.class.getName() + "dynamic-resources";
 
     private WeakReference<Context> context;
 
+    //Levels of subdirs the files are spread in
+    private final int depth;
+
+    //Dir where the resources lay, known once its loaded. Guarded by the files
+    private File dir;
+
     /**
      * Files to keep track of the LRU. Since there are persisted files prior to this creation
-     * (from a previous application run lets say) its highly recommended to create this (create the cache)
-     * in the application or create, else this can slow down the performance of the app
+     * (from a previous application run lets say), the index is loaded in a worker thread from the
+     * compacted journal, which is a snapshot of the index (plus the records appended since) that is
+     * read sequentially in one go, without listing the dir or touching each file.
      *
-     * (because it will read all the current persisted files and track them on runtime, on the
-     * main thread).
-     * This could be done in a worker thread, but if its too slow, subsequent requests might not use this cache,
-     * because of race conditions (we could also use a semaphore, but I find this approach way too prone to errors).
+     * Operations that arrive before its loaded are queued and applied once its ready, no one waits for it.
+     * Once loaded the index is reconciled with the dir in the background, to sweep leftovers and
+     * pick up files the journal didnt know about.
      *
      * To avoid high memory usage, instead of tracking the whole file, we just track its sensitive data
+     *
+     * Files are indexed by their path in access order, so the eldest entry is always the least recently
+     * used one. Touching, adding and evicting an entry are all constant time.
+     */
+    private final LinkedHashMap<String, Container> files;
+
+    /**
+     * Partitions with their size and policy. Guarded by the files
      */
-    private List<Container> files;
-    private long size;
-    private long maxSize;
+    private final @NonNull Partition defaultPartition;
+    private final @NonNull Map<String, Partition> partitions;
+
+    //Placements requested for files that arent tracked yet (eg. still downloading). Guarded by the files
+    private final @NonNull Map<String, Journal.Placement> pendingPlacements;
+    private static final int MAX_PENDING_PLACEMENTS = 256;
 
     /**
-     * Variables for the initialization logic
+     * Variables for the initialization logic. Both are guarded by the files
      */
-    private final Object lock = new Object();
     private boolean initialized = false;
-    private static final int MAX_TIME_IDLE = 2000;
+    private final List<Runnable> queued = new ArrayList<>();
+
+    /**
+     * Counter that owns each journal. Only one can write the journal and evict the files of a dir, if
+     * another one is created for it (eg. by a second DiskCache) the previous one is retired.
+     * Guarded by itself
+     */
+    private static final Map<String, WeakReference<LruCounter>> OWNERS = new HashMap<>();
+
+    //If another counter owns the dir now. Guarded by the files
+    private boolean retired = false;
+
+    //Margin for the temporary files timestamps, so writes started right now arent swept
+    private static final int STALE_TEMP_MARGIN = 2000;
+
+    //Version of the names and layout of the files, if it changes they are migrated
+    private static final int LAYOUT_VERSION = 4;
+
+    //Age after which a download that didnt finish isnt worth resuming anymore
+    private static final long STALE_PARTIAL_AGE = 24 * 60 * 60 * 1000; // 1 day
 
     /**
      * Cache utils
      */
     private DiskCache cache;
-    private SharedPreferences sharedPreferences;
+    private Journal journal;
 
     /**
      * Constructor for the disk cache with a max size for storing images
@@ -62,34 +113,65 @@ class LruCounter {
     public LruCounter(DiskCache cache, long maxDiskSize) {
         this.context = new WeakReference<>(cache.getContext());
         this.cache = cache;
-        this.maxSize = maxDiskSize;
-        sharedPreferences = getContext().getSharedPreferences(SHARED_PREFERENCES_DIR, Context.MODE_PRIVATE);
+        this.depth = cache.getDepth();
+        journal = new Journal(Files.createJournal(getContext()));
 
-        size = 0;
-        files = new ArrayList<>();
+        //Temporary files older than this were left by a previous run
+        final long startTime = System.currentTimeMillis() - STALE_TEMP_MARGIN;
 
-        AsyncTask.execute(new Runnable() {
+        files = new LinkedHashMap<>(16, 0.75f, true);
+
+        defaultPartition = new Partition(maxDiskSize, new LruPolicy());
+        partitions = new HashMap<>();
+        pendingPlacements = new LinkedHashMap<String, Journal.Placement>() {
             @Override
-            public void run() {
-                synchronized (lock) {
-                    //Read all the available files and track them
-                    File dir = Files.createDir(getContext());
-                    if (dir.exists()) {
-                        for (File child : dir.listFiles()) {
-                            files.add(new Container(sharedPreferences.getLong(child.getPath(), 0), child.getPath(), child.length()));
-                            size += child.length();
-                        }
-                    }
+            protected boolean removeEldestEntry(Map.Entry<String, Journal.Placement> eldest) {
+                //Downloads that never finished, forget them
+                return size() > MAX_PENDING_PLACEMENTS;
+            }
+        };
 
-                    Collections.sort(files, new ReverseComparator());
+        claim(Files.createJournal(getContext()));
 
-                    initialized = true;
-                    lock.notifyAll();
-                }
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+                reconcile(startTime);
             }
         });
     }
 
+    /**
+     * Make this counter the owner of the dir, retiring the previous one if theres any. Else both would
+     * append to the same journal and evict the files of the other
+     * @param journalFile of the dir
+     */
+    private void claim(@NonNull File journalFile) {
+        LruCounter previous;
+
+        synchronized (OWNERS) {
+            WeakReference<LruCounter> owner = OWNERS.put(journalFile.getPath(), new WeakReference<>(this));
+            previous = owner != null ? owner.get() : null;
+        }
+
+        if (previous != null) {
+            previous.retire();
+        }
+    }
+
+    /**
+     * Stop writing the journal and evicting files, since another counter owns the dir now.
+     * The files already tracked are still served
+     */
+    private void retire() {
+        synchronized (files) {
+            retired = true;
+        }
+
+        journal.close();
+    }
+
     /**
      * Get the context with resource access
      * @return Context with resource privileges
@@ -99,100 +181,811 @@ class LruCounter {
     }
 
     /**
-     * This method might be complex.
-     * In ALL cases, this will just return true. Because we initialize Pomu, and the cache will load
-     * and by the time the first Pomu image gets loaded, this has already been initialized long time ago.
+     * Load the index from the journal, in access order, and apply the operations that arrived meanwhile.
      *
-     * If we want in the application to download images, this images will be downloaded the first time the app
-     * is run. So this cache will also be initialized asap, without having to wait. (+ the image takes some time
-     * to get downloaded remember)
+     * The journal is trusted as is, the files it lists are checked later by the reconciliation.
+     */
+    @WorkerThread
+    private void load() {
+        File dir = Files.createDir(getContext());
+        boolean migrated = migrateIfNeeded(dir);
+
+        Map<String, Journal.Entry> journaled = journal.replay();
+
+        List<Container> loaded = new ArrayList<>(journaled.size());
+        for (Map.Entry<String, Journal.Entry> entry : journaled.entrySet()) {
+            Journal.Entry value = entry.getValue();
+            Container container = new Container(value.time, locate(dir, entry.getKey(), migrated).getPath(),
+                    value.size, value.metadata);
+            container.setPlacement(normalize(value.placement));
+            loaded.add(container);
+        }
+
+        //Sort them once so the index starts in access order
+        Collections.sort(loaded, new ReverseComparator());
+
+        List<Runnable> pending;
+        synchronized (files) {
+            this.dir = dir;
+
+            for (Container container : loaded) {
+                files.put(container.getPath(), container);
+                track(container);
+            }
+
+            initialized = true;
+            pending = new ArrayList<>(queued);
+            queued.clear();
+        }
+
+        for (Runnable runnable : pending) {
+            runnable.run();
+        }
+
+        evict();
+    }
+
+    /**
+     * Get the file of a journal key. Keys are the path of the file relative to the dir, but older journals
+     * only have its name, and if the files were migrated the path they have isnt the current one. In those
+     * cases its resolved by name with the current layout
      *
-     * But what if we already have our cache filled, and we upload an update with MORE images to download in
-     * the application, and the user updates his app. The cache will surely take some time (~600ms) to load
-     * and the new images need to be downloaded.
+     * @param dir root of the resources
+     * @param key of the file in the journal
+     * @param migrated if the files were moved (and maybe renamed) to a new layout
+     * @return File it refers to
+     */
+    private @NonNull File locate(@NonNull File dir, @NonNull String key, boolean migrated) {
+        int separator = key.lastIndexOf(File.separatorChar);
+
+        if (separator < 0 || migrated) {
+            String name = key.substring(separator + 1);
+            //If the files were renamed, the journal still has their old names
+            return Files.resolve(dir, migrated ? Files.normalize(name) : name, depth);
+        }
+
+        return new File(dir, key);
+    }
+
+    /**
+     * Get the key of a file in the journal, its path relative to the dir of the resources. Unlike its
+     * name, its unique no matter how the file was named. Guarded by the files
      *
-     * If we just returned false, we wouldnt be tracking in that first time those images (not a big deal), but
-     * still thats considered a bug. So we make the main thread idle (its in the application first time, so its part of the cold
-     * start) for 2 sec max until it gets loaded. If it does, it was just a first time cold start, else it will return
-     * false and we wont be tracking in that first time the downloaded images.
+     * @param path of the file
+     * @return key for the journal
+     */
+    private @NonNull String key(@NonNull String path) {
+        String root = dir.getPath();
+
+        if (path.length() > root.length() + 1 && path.startsWith(root) &&
+                path.charAt(root.length()) == File.separatorChar) {
+            return path.substring(root.length() + 1);
+        }
+
+        return new File(path).getName();
+    }
+
+    /**
+     * Move the files to the layout of the cache if they were stored with a different one (eg. flat, or
+     * with the short names of older versions). Files that arent entries (eg. nested in dirs named after
+     * the uri, or with its query in their extension, by older versions) are deleted, since theres no way
+     * of knowing their uri. The layout is persisted, so this only walks the dir once after it changes.
      *
-     * Remember also that the new images have to be downloaded from the net, so its highly unprobable to happen.
-     * But better safe than worry.
+     * Files being written meanwhile are already in the new layout, since the cache resolves them with it.
      *
-     * @return if its initialized or not
+     * @param dir root of the resources
+     * @return true if the files were migrated
      */
-    private boolean isInitialized() {
-        if (!initialized) {
+    @WorkerThread
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private boolean migrateIfNeeded(@NonNull File dir) {
+        File layout = Files.createLayout(getContext());
+        if (readLayout(layout) == depth) {
+            return false;
+        }
+
+        List<File> children = new ArrayList<>();
+        Files.list(dir, children);
+
+        for (File child : children) {
+            if (Files.isTemp(child)) {
+                //It might be still being written, the reconciliation sweeps it if its a leftover
+                continue;
+            }
+
+            if (!Files.isEntry(dir, child)) {
+                child.delete();
+                continue;
+            }
+
+            File target = Files.resolve(dir, Files.normalize(child.getName()), depth);
+
+            if (target.equals(child)) {
+                continue;
+            }
+
             try {
-                synchronized (lock) {
-                    lock.wait(MAX_TIME_IDLE);
+                Files.createParent(target);
+            } catch (IOException e) {
+                //Leave it, the reconciliation will track it where it is
+                continue;
+            }
+
+            if (!child.renameTo(target)) {
+                //Theres a newer version there already, or it cant be moved
+                child.delete();
+            }
+        }
+
+        //Remove the subdirs the old layout left empty. The non empty ones arent deleted
+        File[] subdirs = dir.listFiles();
+        if (subdirs != null) {
+            for (File subdir : subdirs) {
+                deleteIfEmpty(subdir);
+            }
+        }
+
+        writeLayout(layout, depth);
+        return true;
+    }
+
+    /**
+     * Delete the empty subdirs of a dir, and the dir itself if it ends up empty
+     * @param dir to clean up
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private static void deleteIfEmpty(@NonNull File dir) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+
+        for (File child : children) {
+            deleteIfEmpty(child);
+        }
+
+        //Fails if its not empty
+        dir.delete();
+    }
+
+    /**
+     * Read the persisted layout
+     * @param layout file where its persisted
+     * @return depth of the layout, -1 if its unknown or the names arent the current ones
+     */
+    private static int readLayout(@NonNull File layout) {
+        if (!layout.exists()) {
+            return -1;
+        }
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new FileInputStream(layout));
+            if (input.readInt() != LAYOUT_VERSION) {
+                return -1;
+            }
+            return input.readInt();
+        } catch (IOException e) {
+            //Walk it again, it doesnt harm
+            return -1;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    //Nothing to do
                 }
-            } catch (InterruptedException e) {
-                //Make it return the initialized state.
             }
         }
+    }
 
-        return initialized;
+    /**
+     * Persist the layout
+     * @param layout file where its persisted
+     * @param depth of the layout
+     */
+    private static void writeLayout(@NonNull File layout, int depth) {
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new FileOutputStream(layout));
+            output.writeInt(LAYOUT_VERSION);
+            output.writeInt(depth);
+        } catch (IOException e) {
+            //It will be migrated again next time, which finds nothing to move
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    //Nothing to do
+                }
+            }
+        }
     }
 
     /**
-     * Evict a key from the cache
+     * Reconcile the loaded index with the files really in the dir. Leftovers of writes that never finished
+     * are swept, files the journal didnt know about (eg. tracked by older versions) are added, and the ones
+     * that dont exist anymore are dropped. Then the journal is compacted, as a checkpoint of the index.
+     *
+     * @param startTime temporary files older than this were left by a previous run
      */
-    public void evict() {
-        if (isInitialized()) {
-            SharedPreferences.Editor editor = sharedPreferences.edit();
-            boolean changed = false;
+    @WorkerThread
+    private void reconcile(long startTime) {
+        synchronized (files) {
+            if (retired) {
+                //The owner reconciles the dir
+                return;
+            }
+        }
+
+        SharedPreferences legacy = getContext().getSharedPreferences(LEGACY_SHARED_PREFERENCES_DIR, Context.MODE_PRIVATE);
+
+        List<File> children = new ArrayList<>();
+        Files.list(Files.createDir(getContext()), children);
+
+        Map<String, File> existing = new HashMap<>();
+        for (File child : children) {
+            if (Files.isTemp(child)) {
+                //Leftover of a write that never finished, sweep it
+                if (child.lastModified() < startTime) {
+                    //noinspection ResultOfMethodCallIgnored
+                    child.delete();
+                }
+                continue;
+            }
+
+            if (Files.isPartial(child)) {
+                //Download that didnt finish, keep it so it can be resumed unless its too old
+                if (child.lastModified() < startTime - STALE_PARTIAL_AGE) {
+                    //noinspection ResultOfMethodCallIgnored
+                    child.delete();
+                }
+                continue;
+            }
+
+            existing.put(child.getPath(), child);
+        }
+
+        synchronized (files) {
+            List<Container> reconciled = new ArrayList<>(Math.max(files.size(), existing.size()));
+
+            for (Container container : files.values()) {
+                File file = existing.remove(container.getPath());
 
-            while (size > maxSize && !files.isEmpty()) {
-                Container container = files.get(0);
+                if (file != null) {
+                    container.setSize(file.length());
+                    reconciled.add(container);
+                } else if (new File(container.getPath()).exists()) {
+                    //Written after the dir was listed
+                    reconciled.add(container);
+                }
+            }
 
-                size -= container.getSize();
+            for (File file : existing.values()) {
+                reconciled.add(new Container(legacy.getLong(file.getPath(), 0), file.getPath(), file.length()));
+            }
 
-                cache.remove(Uri.parse(container.getPath()));
-                files.remove(0);
-                editor.remove(container.getPath());
+            Collections.sort(reconciled, new ReverseComparator());
 
-                changed = true;
+            files.clear();
+            defaultPartition.reset();
+            for (Partition partition : partitions.values()) {
+                partition.reset();
             }
 
-            if (changed) {
-                editor.apply();
+            for (Container container : reconciled) {
+                files.put(container.getPath(), container);
+                track(container);
             }
+
+            //Start from a clean journal with only the files that really exist
+            journal.compact(snapshot());
+        }
+
+        if (!legacy.getAll().isEmpty()) {
+            legacy.edit().clear().apply();
         }
+
+        evict();
     }
 
     /**
-     * Add a file to the cache
-     * @param file to track
+     * Set the policy that decides which file of the default partition is evicted. The tracked files
+     * are fed to it, from least to most recently used
+     * @param policy of the eviction
+     */
+    public void setPolicy(@NonNull EvictionPolicy policy) {
+        synchronized (files) {
+            if (policy == defaultPartition.policy) {
+                return;
+            }
+
+            defaultPartition.policy = policy;
+            defaultPartition.reset();
+            for (Container container : files.values()) {
+                if (partitionOf(container) == defaultPartition && !isPinned(container)) {
+                    defaultPartition.track(container);
+                }
+            }
+        }
+
+        evict();
+    }
+
+    /**
+     * Declare a partition, with its own max size and policy. Tracked files already placed in it (eg. in
+     * a previous run) are moved from the default partition to it. If it was already declared, its replaced
+     *
+     * @param name of the partition
+     * @param maxSize in bytes of the files in it
+     * @param policy of the eviction of its files
+     */
+    public void addPartition(@NonNull String name, long maxSize, @NonNull EvictionPolicy policy) {
+        synchronized (files) {
+            List<Container> placed = new ArrayList<>();
+            for (Container container : files.values()) {
+                if (container.getPlacement() != null && name.equals(container.getPlacement().partition)) {
+                    untrack(container);
+                    placed.add(container);
+                }
+            }
+
+            partitions.put(name, new Partition(maxSize, policy));
+
+            for (Container container : placed) {
+                track(container);
+            }
+        }
+
+        evict();
+    }
+
+    /**
+     * Place a file in a partition. If its not tracked yet, it will be placed once its put
+     * @param file to place
+     * @param partition name
+     */
+    public void assign(@NonNull File file, @NonNull String partition) {
+        place(file, partition, null);
+    }
+
+    /**
+     * Pin or unpin a file. If its not tracked yet, it will be pinned once its put
+     * @param file to pin
+     * @param pinned true if it shouldnt be evicted
+     */
+    public void setPinned(@NonNull File file, boolean pinned) {
+        place(file, null, pinned);
+    }
+
+    /**
+     * Change the placement of a file, or keep it pending if its not tracked. If the index isnt loaded
+     * yet its queued
+     * @param file to place
+     * @param partition name, null to keep the current one
+     * @param pinned if its pinned, null to keep the current one
+     */
+    private void place(@NonNull final File file, @Nullable final String partition, @Nullable final Boolean pinned) {
+        List<Container> victims = new ArrayList<>();
+
+        synchronized (files) {
+            if (!initialized) {
+                queued.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        place(file, partition, pinned);
+                    }
+                });
+                return;
+            }
+
+            Container container = files.get(file.getPath());
+
+            if (container == null) {
+                Journal.Placement current = pendingPlacements.get(file.getPath());
+                Journal.Placement placement = merge(current, partition, pinned);
+
+                if (placement != null) {
+                    pendingPlacements.put(file.getPath(), placement);
+                } else {
+                    pendingPlacements.remove(file.getPath());
+                }
+                return;
+            }
+
+            Journal.Placement placement = merge(container.getPlacement(), partition, pinned);
+            if (same(placement, container.getPlacement())) {
+                return;
+            }
+
+            untrack(container);
+            container.setPlacement(placement);
+            track(container);
+
+            journal.appendPlacement(key(file.getPath()), container.getSize(),
+                    placement != null ? placement : new Journal.Placement(null, false));
+            compactIfNeeded();
+
+            evict(partitionOf(container), null, victims);
+        }
+
+        delete(victims);
+    }
+
+    /**
+     * Evict files from the cache until each partition fits in its max size
      */
-    public void add(File file) {
-        if (isInitialized()) {
-            sharedPreferences.edit()
-                    .putLong(file.getPath(), System.currentTimeMillis())
-                    .apply();
+    public void evict() {
+        List<Container> victims = new ArrayList<>();
+
+        synchronized (files) {
+            evict(defaultPartition, null, victims);
+
+            for (Partition partition : partitions.values()) {
+                evict(partition, null, victims);
+            }
+        }
+
+        delete(victims);
+    }
 
-            Container existing = null;
-            for (Container container : files) {
-                if (container.getPath().contentEquals(file.getPath())) {
-                    existing = container;
+    /**
+     * Evict files from a partition until it fits in its max size, along with an incoming one.
+     * The incoming file is never evicted, since its about to be used.
+     *
+     * The evicted files are only removed from the index, the caller deletes them once it releases the lock
+     * with delete(victims), so lookups dont wait for the disk meanwhile.
+     *
+     * @param partition to evict from
+     * @param incoming file that will be added to it, if any
+     * @param victims where the evicted files are added
+     */
+    private void evict(@NonNull Partition partition, @Nullable File incoming, @NonNull List<Container> victims) {
+        synchronized (files) {
+            if (!initialized || retired) {
+                //It will evict once its loaded, or the owner of the dir does
+                return;
+            }
+
+            String keep = null;
+            long needed = 0;
+            if (incoming != null) {
+                keep = incoming.getPath();
+                Container existing = files.get(keep);
+                needed = incoming.length() - (existing != null && partitionOf(existing) == partition ? existing.getSize() : 0);
+            }
+
+            while (partition.size + needed > partition.maxSize) {
+                String victim = partition.policy.victim();
+
+                if (victim == null || victim.equals(keep)) {
                     break;
                 }
+
+                Container container = files.remove(victim);
+                if (container == null) {
+                    //The policy was out of sync, forget it
+                    partition.policy.onRemove(victim);
+                    continue;
+                }
+
+                untrack(container);
+                victims.add(container);
+
+                journal.append(Journal.OP_REMOVE, key(container.getPath()),
+                        System.currentTimeMillis(), container.getSize());
+            }
+
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Delete the files of evicted containers. Must be called without holding the lock of the index
+     * @param victims evicted from the index
+     */
+    private void delete(@NonNull List<Container> victims) {
+        for (Container victim : victims) {
+            cache.remove(Uri.parse(victim.getPath()));
+        }
+    }
+
+    /**
+     * Put a written file in the cache, evicting others of its partition to make room for it. If the
+     * index isnt loaded yet its queued
+     * @param file written
+     */
+    public void put(final File file) {
+        final long time = System.currentTimeMillis();
+        List<Container> victims;
+
+        synchronized (files) {
+            if (!initialized) {
+                queued.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        delete(put(file, time));
+                    }
+                });
+                return;
+            }
+
+            victims = put(file, time);
+        }
+
+        delete(victims);
+    }
+
+    /**
+     * Put a written file in the loaded index
+     * @param file written
+     * @param time when it was written
+     * @return files evicted to make room for it, to be deleted once the lock is released
+     */
+    private @NonNull List<Container> put(File file, long time) {
+        List<Container> victims = new ArrayList<>();
+
+        synchronized (files) {
+            Journal.Placement placement = pendingPlacements.remove(file.getPath());
+            Container existing = files.get(file.getPath());
+
+            if (existing != null) {
+                if (placement != null && !same(placement, existing.getPlacement())) {
+                    untrack(existing);
+                    existing.setPlacement(placement);
+                    track(existing);
+                    journal.appendPlacement(key(file.getPath()), existing.getSize(), placement);
+                }
+                placement = existing.getPlacement();
+            }
+
+            if (placement == null || !placement.pinned) {
+                evict(partitionOf(placement), file, victims);
             }
 
+            add(file, time, placement);
+        }
+
+        return victims;
+    }
+
+    /**
+     * Add an accessed file to the cache. If the index isnt loaded yet its queued
+     * @param file to track
+     */
+    public void add(final File file) {
+        final long time = System.currentTimeMillis();
+
+        synchronized (files) {
+            if (!initialized) {
+                queued.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        add(file, time, null);
+                    }
+                });
+                return;
+            }
+        }
+
+        add(file, time, null);
+    }
+
+    /**
+     * Add a file to the loaded index
+     * @param file to track
+     * @param time when it was accessed
+     * @param placement of the file if its not tracked yet, null for the default one
+     */
+    private void add(File file, long time, @Nullable Journal.Placement placement) {
+        synchronized (files) {
+            //Getting it moves it to the most recently used position
+            Container existing = files.get(file.getPath());
+
             if (existing != null) {
-                files.remove(existing);
+                existing.setTime(time);
+
+                long length = file.length();
+                if (length != existing.getSize()) {
+                    //It was replaced by a new version
+                    if (!isPinned(existing)) {
+                        partitionOf(existing).size += length - existing.getSize();
+                    }
+                    existing.setSize(length);
+                    journal.append(Journal.OP_PUT, key(file.getPath()), time, length);
+                } else {
+                    journal.append(Journal.OP_ACCESS, key(file.getPath()), time, length);
+                }
+
+                if (!isPinned(existing)) {
+                    partitionOf(existing).policy.onAccess(existing.getPath(), length);
+                }
             } else {
-                size += file.length();
+                Container container = new Container(time, file.getPath(), file.length());
+                container.setPlacement(placement);
+                files.put(container.getPath(), container);
+                track(container);
+                journal.append(Journal.OP_PUT, key(file.getPath()), time, container.getSize());
+
+                if (placement != null) {
+                    journal.appendPlacement(key(file.getPath()), container.getSize(), placement);
+                }
+            }
+
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Get the metadata of a tracked file. If the index isnt loaded yet theres none, so the file
+     * is served as is instead of waiting for it
+     * @param file tracked
+     * @return metadata or null if its not tracked or it has none
+     */
+    public @Nullable Metadata getMetadata(File file) {
+        synchronized (files) {
+            //Its read right before using the file, so moving it to the most recently used position is fine
+            Container container = initialized ? files.get(file.getPath()) : null;
+            if (container != null) {
+                return container.getMetadata();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Set the metadata of a tracked file. If the index isnt loaded yet its queued
+     * @param file tracked
+     * @param metadata of the file
+     */
+    public void setMetadata(final File file, @NonNull final Metadata metadata) {
+        synchronized (files) {
+            if (!initialized) {
+                queued.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        setMetadata(file, metadata);
+                    }
+                });
+                return;
+            }
+
+            Container container = files.get(file.getPath());
+
+            if (container != null) {
+                container.setMetadata(metadata);
+                journal.appendMetadata(key(file.getPath()), container.getSize(), metadata);
+                compactIfNeeded();
             }
+        }
+    }
+
+    /**
+     * Get the partition of a file
+     * @param container of the file
+     * @return its partition, or the default one if its not declared
+     */
+    private @NonNull Partition partitionOf(@NonNull Container container) {
+        return partitionOf(container.getPlacement());
+    }
 
-            files.add(new Container(System.currentTimeMillis(), file.getPath(), file.length()));
+    /**
+     * Get the partition of a placement
+     * @param placement of a file, null for the default one
+     * @return its partition, or the default one if its not declared
+     */
+    private @NonNull Partition partitionOf(@Nullable Journal.Placement placement) {
+        if (placement != null && placement.partition != null) {
+            Partition partition = partitions.get(placement.partition);
 
-            Collections.sort(files, new ReverseComparator());
+            if (partition != null) {
+                return partition;
+            }
         }
+
+        return defaultPartition;
+    }
+
+    /**
+     * Check if a file is pinned
+     * @param container of the file
+     * @return true if it cant be evicted
+     */
+    private static boolean isPinned(@NonNull Container container) {
+        return container.getPlacement() != null && container.getPlacement().pinned;
     }
 
     /**
-     * Comparator class to sort from lowest size to highest size of files
+     * Account a file in its partition. Pinned files arent accounted, they cant be evicted
+     * @param container of the file
+     */
+    private void track(@NonNull Container container) {
+        if (!isPinned(container)) {
+            partitionOf(container).track(container);
+        }
+    }
+
+    /**
+     * Stop accounting a file in its partition
+     * @param container of the file
+     */
+    private void untrack(@NonNull Container container) {
+        if (!isPinned(container)) {
+            partitionOf(container).untrack(container);
+        }
+    }
+
+    /**
+     * Merge a change into a placement
+     * @param current placement, null for the default one
+     * @param partition new partition, null to keep the current one
+     * @param pinned if its pinned, null to keep the current one
+     * @return new placement, null if its the default one
+     */
+    private static @Nullable Journal.Placement merge(@Nullable Journal.Placement current,
+                                                     @Nullable String partition, @Nullable Boolean pinned) {
+        String newPartition = partition != null ? partition : (current != null ? current.partition : null);
+        boolean newPinned = pinned != null ? pinned : (current != null && current.pinned);
+
+        return normalize(new Journal.Placement(newPartition, newPinned));
+    }
+
+    /**
+     * Normalize a placement, so the default one is always null
+     * @param placement to normalize
+     * @return placement or null if its the default one
+     */
+    private static @Nullable Journal.Placement normalize(@Nullable Journal.Placement placement) {
+        if (placement == null || (placement.partition == null && !placement.pinned)) {
+            return null;
+        }
+
+        return placement;
+    }
+
+    /**
+     * Check if two placements are the same
+     * @param first placement
+     * @param second placement
+     * @return true if they are equal
+     */
+    private static boolean same(@Nullable Journal.Placement first, @Nullable Journal.Placement second) {
+        if (first == null || second == null) {
+            return first == second;
+        }
+
+        return first.pinned == second.pinned &&
+                (first.partition == null ? second.partition == null : first.partition.equals(second.partition));
+    }
+
+    /**
+     * Compact the journal to the currently tracked files if it has grown too much
+     */
+    private void compactIfNeeded() {
+        if (journal.shouldCompact()) {
+            journal.compact(snapshot());
+        }
+    }
+
+    /**
+     * Snapshot of the tracked files as journal entries, from least to most recently used
+     * @return map of file keys with their state
+     */
+    private Map<String, Journal.Entry> snapshot() {
+        Map<String, Journal.Entry> live = new LinkedHashMap<>();
+        for (Container container : files.values()) {
+            live.put(key(container.getPath()),
+                    new Journal.Entry(container.getTime(), container.getSize(), container.getMetadata(),
+                            container.getPlacement()));
+        }
+
+        return live;
+    }
+
+    /**
+     * Comparator class to sort from least to most recently used files
      */
     class ReverseComparator implements Comparator<Container> {
 
@@ -203,6 +996,56 @@ class LruCounter {
 
     }
 
+    /**
+     * Partition of the cache, with its own max size and policy
+     */
+    static final class Partition {
+
+        final long maxSize;
+        @NonNull EvictionPolicy policy;
+        long size;
+
+        /**
+         * Constructor
+         * @param maxSize in bytes of the files in it
+         * @param policy of the eviction of its files
+         */
+        Partition(long maxSize, @NonNull EvictionPolicy policy) {
+            this.maxSize = maxSize;
+            this.policy = policy;
+            this.size = 0;
+            policy.setMaxSize(maxSize);
+        }
+
+        /**
+         * Account a file in the partition
+         * @param container of the file
+         */
+        void track(@NonNull Container container) {
+            size += container.getSize();
+            policy.onAdd(container.getPath(), container.getSize());
+        }
+
+        /**
+         * Stop accounting a file in the partition
+         * @param container of the file
+         */
+        void untrack(@NonNull Container container) {
+            size -= container.getSize();
+            policy.onRemove(container.getPath());
+        }
+
+        /**
+         * Forget all the files of the partition
+         */
+        void reset() {
+            size = 0;
+            policy.clear();
+            policy.setMaxSize(maxSize);
+        }
+
+    }
+
     /**
      * DTO Class for tracking files in the cache
      */
@@ -211,6 +1054,8 @@ class LruCounter {
         private long time;
         private @NonNull String path;
         private long size;
+        private @Nullable Metadata metadata;
+        private @Nullable Journal.Placement placement;
 
         /**
          * Constructor
@@ -219,9 +1064,21 @@ class LruCounter {
          * @param size size of the file in bytes
          */
         public Container(long time, @NonNull String path, long size) {
+            this(time, path, size, null);
+        }
+
+        /**
+         * Constructor
+         * @param time when the file was last used/accessed
+         * @param path absolute path of the file
+         * @param size size of the file in bytes
+         * @param metadata validators and freshness of the file, if any
+         */
+        public Container(long time, @NonNull String path, long size, @Nullable Metadata metadata) {
             this.time = time;
             this.path = path;
             this.size = size;
+            this.metadata = metadata;
         }
 
         /**
@@ -232,6 +1089,46 @@ class LruCounter {
             return size;
         }
 
+        /**
+         * Setter
+         * @param size of the file in bytes
+         */
+        void setSize(long size) {
+            this.size = size;
+        }
+
+        /**
+         * Getter
+         * @return validators and freshness of the file, if any
+         */
+        public @Nullable Metadata getMetadata() {
+            return metadata;
+        }
+
+        /**
+         * Setter
+         * @param metadata validators and freshness of the file
+         */
+        void setMetadata(@Nullable Metadata metadata) {
+            this.metadata = metadata;
+        }
+
+        /**
+         * Getter
+         * @return partition of the file and if its pinned, null for the default placement
+         */
+        @Nullable Journal.Placement getPlacement() {
+            return placement;
+        }
+
+        /**
+         * Setter
+         * @param placement partition of the file and if its pinned, null for the default placement
+         */
+        void setPlacement(@Nullable Journal.Placement placement) {
+            this.placement = placement;
+        }
+
         /**
          * Getter
          * @return last accessed time
@@ -240,6 +1137,14 @@ class LruCounter {
             return time;
         }
 
+        /**
+         * Setter
+         * @param time when the file was last used/accessed
+         */
+        void setTime(long time) {
+            this.time = time;
+        }
+
         /**
          * Getter
          * @return absolute path of the file
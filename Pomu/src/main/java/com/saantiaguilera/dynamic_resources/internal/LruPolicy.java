@@ -0,0 +1,60 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Evicts the least recently used entry. Its the default policy of the DiskCache.
+ *
+ * Cheap and good for most workloads, but a burst of one-off (and maybe huge) downloads can flush
+ * small entries that are used all the time.
+ */
+public class LruPolicy implements EvictionPolicy {
+
+    //Entries in access order, the eldest is the least recently used
+    private final @NonNull LinkedHashMap<String, Long> entries;
+
+    /**
+     * Constructor
+     */
+    public LruPolicy() {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    @Override
+    public void setMaxSize(long maxSize) {
+        //Recency doesnt depend on the size
+    }
+
+    @Override
+    public void onAdd(@NonNull String key, long size) {
+        entries.put(key, size);
+    }
+
+    @Override
+    public void onAccess(@NonNull String key, long size) {
+        entries.put(key, size);
+    }
+
+    @Override
+    public void onRemove(@NonNull String key) {
+        entries.remove(key);
+    }
+
+    @Override
+    public @Nullable String victim() {
+        if (entries.isEmpty()) {
+            return null;
+        }
+
+        return entries.keySet().iterator().next();
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+
+}
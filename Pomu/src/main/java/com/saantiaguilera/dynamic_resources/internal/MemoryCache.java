@@ -0,0 +1,133 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+/**
+ * Size bounded LRU cache of decoded bitmaps, consulted before going to the disk or the network
+ * when showing a resource in a plain ImageView.
+ *
+ * Since the same file can be decoded differently depending on where its shown, entries are
+ * keyed by the uri plus the target dimensions and the bitmap config.
+ *
+ * If users want to still use this, but change the maximum memory available for the cache,
+ * they can supply in a custom configurations this class using the int constructor
+ */
+public class MemoryCache {
+
+    //Fraction of the app memory class used by default (1/8 of the available heap)
+    private static final int DEFAULT_MEMORY_FRACTION = 8;
+
+    private static final int BYTES_IN_MB = 1024 * 1024;
+
+    private @NonNull LruCache<String, Bitmap> bitmaps;
+
+    //Pool where the evicted bitmaps go once no one shows them
+    private @Nullable BitmapPool pool;
+
+    /**
+     * Default constructor, sized as a fraction of the memory class of the device
+     * @param context with access to the system services
+     */
+    public MemoryCache(@NonNull Context context) {
+        this(getDefaultSize(context));
+    }
+
+    /**
+     * Constructor with a custom max size
+     * @param maxSize in bytes the decoded bitmaps can use
+     */
+    public MemoryCache(int maxSize) {
+        this.bitmaps = new LruCache<String, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return BitmapPool.getSize(value);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (pool != null) {
+                    pool.release(oldValue);
+                }
+            }
+        };
+    }
+
+    /**
+     * Set the pool that tracks the references of the cached bitmaps
+     * @param pool of bitmaps
+     */
+    void setPool(@Nullable BitmapPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Get the default size for the device
+     * @param context with access to the system services
+     * @return size in bytes
+     */
+    private static int getDefaultSize(@NonNull Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        return activityManager.getMemoryClass() * BYTES_IN_MB / DEFAULT_MEMORY_FRACTION;
+    }
+
+    /**
+     * Create the key for a decoded resource
+     * @param uri of the resource
+     * @param width of the target where it will be shown
+     * @param height of the target where it will be shown
+     * @param config of the decoded bitmap
+     * @return key for the bitmap
+     */
+    public static @NonNull String key(@NonNull Uri uri, int width, int height, @NonNull Bitmap.Config config) {
+        return uri.toString() + '#' + width + 'x' + height + ':' + config.name();
+    }
+
+    /**
+     * Get the bitmap for a given key
+     * @param key of the bitmap
+     * @return bitmap if its in the cache, null otherwise
+     */
+    public @Nullable Bitmap get(@NonNull String key) {
+        return bitmaps.get(key);
+    }
+
+    /**
+     * Put a decoded bitmap in the cache. If its bigger than the whole cache its not cached, else
+     * it would be evicted (and released to the pool) right away while its still being shown
+     * @param key of the bitmap
+     * @param bitmap decoded
+     */
+    public void put(@NonNull String key, @NonNull Bitmap bitmap) {
+        if (BitmapPool.getSize(bitmap) > bitmaps.maxSize()) {
+            return;
+        }
+
+        if (pool != null) {
+            pool.acquire(bitmap);
+        }
+
+        bitmaps.put(key, bitmap);
+    }
+
+    /**
+     * Remove a bitmap from the cache
+     * @param key of the bitmap
+     */
+    public void remove(@NonNull String key) {
+        bitmaps.remove(key);
+    }
+
+    /**
+     * Clear all the bitmaps of the cache
+     */
+    public void clear() {
+        bitmaps.evictAll();
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Date;
+
+import okhttp3.CacheControl;
+import okhttp3.Response;
+
+/**
+ * Validators and freshness of a cached resource, taken from the response it was downloaded with.
+ *
+ * With them the resource can be revalidated with a conditional request (If-None-Match or
+ * If-Modified-Since), which costs just the headers if it didnt change.
+ */
+public final class Metadata {
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_EXPIRES = "Expires";
+    private static final String HEADER_DATE = "Date";
+
+    //Expiration of the resources whose freshness is unknown
+    static final long UNKNOWN = -1;
+
+    private final @Nullable String etag;
+    private final @Nullable String lastModified;
+    private final long fetchedAt;
+    private final long expiresAt;
+
+    /**
+     * Constructor
+     * @param etag of the response, if any
+     * @param lastModified of the response, if any
+     * @param fetchedAt time when the response was received (or last revalidated)
+     * @param expiresAt time when the resource stops being fresh, or UNKNOWN
+     */
+    Metadata(@Nullable String etag, @Nullable String lastModified, long fetchedAt, long expiresAt) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.fetchedAt = fetchedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Create the metadata of a response
+     * @param response from network
+     * @param now time when it was received
+     * @return metadata of the response
+     */
+    static @NonNull Metadata from(@NonNull Response response, long now) {
+        return new Metadata(response.header(HEADER_ETAG), response.header(HEADER_LAST_MODIFIED),
+                now, getExpiration(response, now));
+    }
+
+    /**
+     * Create the metadata of a resource after revalidating it. The validators the not modified
+     * response brings replace the old ones.
+     *
+     * @param response not modified response of the revalidation
+     * @param now time when it was received
+     * @return updated metadata
+     */
+    @NonNull Metadata refresh(@NonNull Response response, long now) {
+        String newEtag = response.header(HEADER_ETAG);
+        String newLastModified = response.header(HEADER_LAST_MODIFIED);
+
+        return new Metadata(newEtag != null ? newEtag : etag,
+                newLastModified != null ? newLastModified : lastModified,
+                now, getExpiration(response, now));
+    }
+
+    /**
+     * Get when a response stops being fresh, according to its Cache-Control max-age or its Expires
+     * @param response from network
+     * @param now time when it was received
+     * @return expiration time or UNKNOWN if it doesnt say
+     */
+    private static long getExpiration(@NonNull Response response, long now) {
+        CacheControl cacheControl = response.cacheControl();
+
+        if (cacheControl.noCache()) {
+            return now;
+        }
+
+        if (cacheControl.maxAgeSeconds() >= 0) {
+            return now + cacheControl.maxAgeSeconds() * 1000L;
+        }
+
+        Date expires = response.headers().getDate(HEADER_EXPIRES);
+        if (expires != null) {
+            //Relative to the server clock, in case ours is off
+            Date date = response.headers().getDate(HEADER_DATE);
+            long serverNow = date != null ? date.getTime() : now;
+
+            return now + Math.max(0, expires.getTime() - serverNow);
+        }
+
+        return UNKNOWN;
+    }
+
+    /**
+     * Getter
+     * @return ETag of the resource, if any
+     */
+    public @Nullable String getEtag() {
+        return etag;
+    }
+
+    /**
+     * Getter
+     * @return Last-Modified of the resource, if any
+     */
+    public @Nullable String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Getter
+     * @return time when the resource was downloaded or last revalidated
+     */
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * Getter
+     * @return time when the resource stops being fresh, or -1 if unknown
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Check if the resource can be revalidated with a conditional request
+     * @return true if it has validators
+     */
+    public boolean hasValidators() {
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * Check if the resource is still fresh. If its freshness is unknown its considered stale
+     * @param now current time
+     * @return true if its fresh
+     */
+    public boolean isFresh(long now) {
+        return expiresAt != UNKNOWN && now < expiresAt;
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+/**
+ * Short lived, size bounded cache of the uris that failed with a client error (eg. a 404).
+ *
+ * While an uri is here, fetching it fails right away without touching the network, so a
+ * missing resource requested in a tight loop (eg. a list being scrolled) doesnt hammer the server.
+ *
+ * If users want to still use this, but change its size or how long the failures are kept,
+ * they can supply in a custom configurations this class using the 2 params constructor
+ */
+public class NegativeCache {
+
+    //Default amount of failed uris kept
+    private static final int DEFAULT_MAX_ENTRIES = 64;
+
+    //Default time a failure is kept
+    private static final long DEFAULT_TTL_MILLIS = 30 * 1000; // 30 secs
+
+    private final @NonNull LruCache<String, Failure> failures;
+    private final long ttl;
+
+    /**
+     * Default constructor
+     */
+    public NegativeCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * Constructor with a custom size and ttl
+     * @param maxEntries amount of failed uris kept
+     * @param ttlMillis time a failure is kept
+     */
+    public NegativeCache(int maxEntries, long ttlMillis) {
+        this.failures = new LruCache<>(maxEntries);
+        this.ttl = ttlMillis;
+    }
+
+    /**
+     * Get the failure of an uri, if its still known
+     * @param uri requested
+     * @return exception of the failure or null if its not known (or it expired)
+     */
+    public @Nullable ResponseException get(@NonNull Uri uri) {
+        String key = uri.toString();
+        Failure failure = failures.get(key);
+
+        if (failure == null) {
+            return null;
+        }
+
+        if (SystemClock.elapsedRealtime() >= failure.expiresAt) {
+            failures.remove(key);
+            return null;
+        }
+
+        return failure.exception;
+    }
+
+    /**
+     * Remember the failure of an uri. Only client errors are kept
+     * @param exception of the failure
+     */
+    public void put(@NonNull ResponseException exception) {
+        if (exception.isClientError()) {
+            failures.put(exception.getUri().toString(),
+                    new Failure(exception, SystemClock.elapsedRealtime() + ttl));
+        }
+    }
+
+    /**
+     * Forget all the failures
+     */
+    public void clear() {
+        failures.evictAll();
+    }
+
+    /**
+     * A known failure and when it stops being trusted
+     */
+    private static class Failure {
+
+        private final @NonNull ResponseException exception;
+        private final long expiresAt;
+
+        Failure(@NonNull ResponseException exception, long expiresAt) {
+            this.exception = exception;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+}
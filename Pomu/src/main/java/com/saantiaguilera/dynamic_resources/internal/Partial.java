@@ -0,0 +1,172 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * State of a download that didnt finish, so it can be resumed from where it stopped instead of
+ * starting again from zero.
+ *
+ * The received bytes are kept in a .partial file next to where the resource will be, and the
+ * validator of the response (its ETag or Last-Modified) plus its total length in a sidecar file.
+ * The download can only be resumed if the server still has the same version of the resource,
+ * which is checked with the validator through an If-Range header.
+ */
+public final class Partial {
+
+    private final @NonNull File data;
+    private final @NonNull File meta;
+
+    private final @Nullable String validator;
+    private final long totalLength;
+
+    /**
+     * Constructor
+     * @param data file with the received bytes
+     * @param meta sidecar file with the validators
+     * @param validator of the response being received
+     * @param totalLength of the whole resource, or -1 if unknown
+     */
+    private Partial(@NonNull File data, @NonNull File meta,
+                    @Nullable String validator, long totalLength) {
+        this.data = data;
+        this.meta = meta;
+        this.validator = validator;
+        this.totalLength = totalLength;
+    }
+
+    /**
+     * Read the partial download of a target file, if any
+     * @param target file where the complete resource will be
+     * @return partial download or null if theres none that can be resumed
+     */
+    @WorkerThread
+    static @Nullable Partial read(@NonNull File target) {
+        File data = Files.createPartial(target);
+        File meta = Files.createPartialMeta(target);
+
+        if (!data.exists() || !meta.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(meta)));
+            String validator = in.readUTF();
+            long totalLength = in.readLong();
+
+            return new Partial(data, meta, validator.isEmpty() ? null : validator, totalLength);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    //Nothing to do
+                }
+            }
+        }
+    }
+
+    /**
+     * Start a new partial download of a target file, discarding any previous one
+     * @param target file where the complete resource will be
+     * @param validator of the response, or null if it has none (it wont be resumable)
+     * @param totalLength of the whole resource, or -1 if unknown
+     * @return partial download
+     * @throws IOException if its state couldnt be written
+     */
+    @WorkerThread
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    static @NonNull Partial begin(@NonNull File target, @Nullable String validator, long totalLength)
+            throws IOException {
+        File data = Files.createPartial(target);
+        File meta = Files.createPartialMeta(target);
+
+        data.delete();
+        meta.delete();
+
+        if (validator != null) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(meta)));
+            try {
+                out.writeUTF(validator);
+                out.writeLong(totalLength);
+            } finally {
+                out.close();
+            }
+        }
+
+        return new Partial(data, meta, validator, totalLength);
+    }
+
+    /**
+     * Getter
+     * @return file with the received bytes
+     */
+    @NonNull File getData() {
+        return data;
+    }
+
+    /**
+     * Getter
+     * @return amount of bytes already received
+     */
+    public long getLength() {
+        return data.length();
+    }
+
+    /**
+     * Getter
+     * @return length of the whole resource, or -1 if unknown
+     */
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    /**
+     * Getter
+     * @return ETag or Last-Modified of the response being received, null if it has none
+     */
+    public @Nullable String getValidator() {
+        return validator;
+    }
+
+    /**
+     * Check if the download can be resumed
+     * @return true if it has a validator and some bytes were already received
+     */
+    public boolean isResumable() {
+        return validator != null && getLength() > 0;
+    }
+
+    /**
+     * Delete the partial download
+     */
+    @WorkerThread
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    void delete() {
+        data.delete();
+        meta.delete();
+    }
+
+    /**
+     * Delete only the state of the partial download, once its data was moved into place
+     */
+    @WorkerThread
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    void complete() {
+        meta.delete();
+    }
+
+}
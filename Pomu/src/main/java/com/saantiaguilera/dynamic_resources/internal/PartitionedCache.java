@@ -0,0 +1,40 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+/**
+ * Cache that splits its entries in named partitions, each with its own quota and eviction, and can pin
+ * entries so they are never evicted.
+ *
+ * A key can be placed before its cached (eg. while its being downloaded), the placement is applied
+ * once its put.
+ *
+ * If a cache doesnt implement this, requests for a partition or pinning are cached as any other.
+ */
+public interface PartitionedCache extends Cache {
+
+    /**
+     * Place a key in a partition
+     * @param key of the resource
+     * @param partition name
+     */
+    @WorkerThread
+    void assign(@NonNull Uri key, @NonNull String partition);
+
+    /**
+     * Pin a key, so its never evicted
+     * @param key of the resource
+     */
+    @WorkerThread
+    void pin(@NonNull Uri key);
+
+    /**
+     * Unpin a key, so it can be evicted again
+     * @param key of the resource
+     */
+    @WorkerThread
+    void unpin(@NonNull Uri key);
+
+}
@@ -1,17 +1,24 @@
 package com.saantiaguilera.dynamic_resources.internal;
 
+import android.graphics.Bitmap;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Process;
+import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.v4.view.AsyncLayoutInflater;
+import android.widget.ImageView;
 
 import com.facebook.imagepipeline.core.PriorityThreadFactory;
 import com.saantiaguilera.dynamic_resources.core.Configurations;
+import com.saantiaguilera.dynamic_resources.internal.loading.DecodeCallback;
 
+import java.io.File;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import okhttp3.OkHttpClient;
 
@@ -25,8 +32,26 @@ public class Pipeline {
 
     private @Nullable OkHttpClient client;
     private @Nullable Cache cache;
+    private @Nullable MemoryCache memoryCache;
+    private @Nullable BitmapPool bitmapPool;
 
-    private @Nullable Executor executor;
+    private @Nullable Executor ioExecutor;
+    private @Nullable Executor writeExecutor;
+    private @Nullable Executor decodeExecutor;
+
+    private @Nullable Scheduler scheduler;
+    private @Nullable NegativeCache negativeCache;
+    private @Nullable RetryPolicy retryPolicy;
+    private @Nullable CircuitBreaker circuitBreaker;
+
+    //Timer where the failed downloads wait before retrying
+    private @Nullable ScheduledExecutorService retryTimer;
+
+    //Seconds the retry timer thread is kept alive when theres nothing to retry
+    private static final int RETRY_TIMER_KEEP_ALIVE_SECONDS = 30;
+
+    //Requests currently loading into each view. Only accessed from the main thread
+    private final @NonNull Map<ImageView, Cancelable> targets;
 
     /**
      * Singleton instance for the pipeline
@@ -50,7 +75,17 @@ public class Pipeline {
     private Pipeline() {
         client = null;
         cache = null;
-        executor = null;
+        memoryCache = null;
+        bitmapPool = null;
+        ioExecutor = null;
+        writeExecutor = null;
+        decodeExecutor = null;
+        scheduler = null;
+        negativeCache = null;
+        retryPolicy = null;
+        circuitBreaker = null;
+        retryTimer = null;
+        targets = new WeakHashMap<>();
     }
 
     /**
@@ -61,27 +96,67 @@ public class Pipeline {
     public void setConfigurations(@NonNull Configurations configurations) {
         this.client = configurations.getClient();
         this.cache = configurations.getCache();
-    }
+        this.memoryCache = configurations.getMemoryCache();
+        this.bitmapPool = configurations.getBitmapPool();
 
-    private @NonNull Executor getSingleThreadPoolExecutor() {
-        if (executor == null) {
-            synchronized (this) {
-                if (executor == null) {
-                    executor = Executors.newFixedThreadPool(1,
-                            new PriorityThreadFactory(Process.THREAD_PRIORITY_BACKGROUND));
-                }
-            }
+        if (memoryCache != null) {
+            memoryCache.setPool(bitmapPool);
+        }
+        this.ioExecutor = configurations.getIoExecutor();
+        this.writeExecutor = configurations.getWriteExecutor();
+        this.decodeExecutor = configurations.getDecodeExecutor();
+        this.scheduler = new Scheduler(configurations.getMaxConcurrentDownloads());
+        this.negativeCache = configurations.getNegativeCache();
+        this.retryPolicy = configurations.getRetryPolicy();
+        this.circuitBreaker = configurations.getCircuitBreaker();
+
+        if (cache instanceof DiskCache && configurations.getEvictionPolicy() != null) {
+            ((DiskCache) cache).setEvictionPolicy(configurations.getEvictionPolicy());
         }
 
-        return executor;
+        if (retryPolicy != null && retryTimer == null) {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                    new PriorityThreadFactory(Process.THREAD_PRIORITY_BACKGROUND));
+            timer.setKeepAliveTime(RETRY_TIMER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+            timer.allowCoreThreadTimeOut(true);
+            this.retryTimer = timer;
+        }
+    }
+
+    /**
+     * Getter for the cache of decoded bitmaps
+     * @return memory cache if configured
+     */
+    public @Nullable MemoryCache getMemoryCache() {
+        return memoryCache;
+    }
+
+    /**
+     * Getter for the pool of reusable bitmaps
+     * @return bitmap pool if configured
+     */
+    public @Nullable BitmapPool getBitmapPool() {
+        return bitmapPool;
     }
 
     /**
-     * Clear all the current data cached on disk
+     * Clear all the current data cached on disk and in memory
      */
     public void removeAllCaches() {
-        if (cache != null) {
-            getSingleThreadPoolExecutor().execute(new Runnable() {
+        if (memoryCache != null) {
+            memoryCache.clear();
+        }
+
+        if (bitmapPool != null) {
+            bitmapPool.clear();
+        }
+
+        if (negativeCache != null) {
+            negativeCache.clear();
+        }
+
+        if (cache != null && writeExecutor != null) {
+            writeExecutor.execute(new Runnable() {
                 @Override
                 public void run() {
                     cache.clear();
@@ -95,8 +170,8 @@ public class Pipeline {
      * @param key uri to remove
      */
     public void removeCache(final Uri key) {
-        if (cache != null) {
-            getSingleThreadPoolExecutor().execute(new Runnable() {
+        if (cache != null && writeExecutor != null) {
+            writeExecutor.execute(new Runnable() {
                 @Override
                 public void run() {
                     cache.remove(key);
@@ -106,12 +181,147 @@ public class Pipeline {
     }
 
     /**
-     * Fetch a particular request
+     * Unpin a particular key from the cache, so it can be evicted again
+     * @param key uri to unpin
+     */
+    public void unpin(@NonNull final Uri key) {
+        if (cache instanceof PartitionedCache && writeExecutor != null) {
+            final PartitionedCache partitioned = (PartitionedCache) cache;
+            writeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    partitioned.unpin(key);
+                }
+            });
+        }
+    }
+
+    /**
+     * Place a key in its partition of the cache and pin it, if requested and the cache supports it.
+     * It doesnt matter if the key is already cached or its still to be downloaded
+     * @param key uri to place
+     * @param partition of the key, null to keep the current one
+     * @param pinned if the key should be pinned
+     */
+    public void place(@NonNull final Uri key, @Nullable final String partition, final boolean pinned) {
+        if ((partition == null && !pinned) || !(cache instanceof PartitionedCache) || writeExecutor == null) {
+            return;
+        }
+
+        final PartitionedCache partitioned = (PartitionedCache) cache;
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (partition != null) {
+                    partitioned.assign(key, partition);
+                }
+
+                if (pinned) {
+                    partitioned.pin(key);
+                }
+            }
+        });
+    }
+
+    /**
+     * Decode a fetched file in background for a target of the given size. The result is posted
+     * to the main thread.
+     *
+     * @param file to decode
+     * @param width of the target where it will be shown
+     * @param height of the target where it will be shown
+     * @param config of the decoded bitmap
+     * @param callback notified in the main thread
+     */
+    @SuppressWarnings("ConstantConditions")
+    public void decode(@NonNull File file, int width, int height,
+                       @NonNull Bitmap.Config config, @NonNull DecodeCallback callback) {
+        Validator.checkNullAndThrow(this, decodeExecutor);
+        decodeExecutor.execute(new Decoder(file, width, height, config, callback, bitmapPool));
+    }
+
+    /**
+     * Track the request loading into a view. If the view had another request loading, its canceled
+     * since the view wont show it anymore (eg. a recycled cell re bound to another url)
+     *
+     * @param view where the request will be shown
+     * @param request loading into the view
+     */
+    @MainThread
+    public void track(@NonNull ImageView view, @NonNull Cancelable request) {
+        Cancelable previous = targets.put(view, request);
+
+        if (previous != null && previous != request) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Stop tracking a request for a view, because it finished. If the view is already loading
+     * another one, nothing happens.
+     *
+     * @param view where the request was shown
+     * @param request that finished
+     */
+    @MainThread
+    public void untrack(@NonNull ImageView view, @NonNull Cancelable request) {
+        if (targets.get(view) == request) {
+            targets.remove(view);
+        }
+    }
+
+    /**
+     * Cancel the request loading into a view, if any
+     * @param view to cancel its request
+     */
+    @MainThread
+    public void cancel(@NonNull ImageView view) {
+        Cancelable previous = targets.remove(view);
+
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Fetch a batch of requests as a unit. At most its parallelism of them are in flight at the
+     * same time, and its callback receives the aggregated progress in the main thread.
+     *
+     * @param request with the uris to fetch
+     * @return handle to cancel the whole batch
+     */
+    public @NonNull Cancelable fetch(@NonNull BatchRequest request) {
+        Batch batch = new Batch(this, request);
+        batch.start();
+        return batch;
+    }
+
+    /**
+     * Fetch a particular request. If it has to be downloaded, it will wait for its turn according
+     * to its priority.
+     *
      * @param request with the data to fetch
+     * @return handle to cancel the request
      */
     @SuppressWarnings("ConstantConditions")
-    public void fetch(@NonNull Request request) {
-        Streamer.Builder builder = Streamer.create();
+    public @NonNull Cancelable fetch(@NonNull Request request) {
+        place(request.getUri(), request.getPartition(), request.isPinned());
+
+        Streamer.Builder builder = Streamer.create()
+                .priority(request.getPriority())
+                .cachePolicy(request.getCachePolicy());
+
+        if (scheduler != null) {
+            builder.scheduler(scheduler);
+        }
+
+        if (ioExecutor != null) {
+            builder.ioExecutor(ioExecutor);
+        }
+
+        if (writeExecutor != null) {
+            builder.writeExecutor(writeExecutor);
+        }
 
         if (cache != null) {
             builder.cache(cache);
@@ -121,11 +331,31 @@ public class Pipeline {
             builder.client(client);
         }
 
+        if (negativeCache != null) {
+            builder.negativeCache(negativeCache);
+        }
+
+        if (retryPolicy != null && retryTimer != null) {
+            builder.retry(retryPolicy, retryTimer);
+        }
+
+        if (circuitBreaker != null) {
+            builder.circuitBreaker(circuitBreaker);
+        }
+
         if (request.getCallback() != null) {
             builder.callback(request.getCallback());
         }
 
-        builder.fetch(request.getUri());
+        if (request.getUpdateCallback() != null) {
+            builder.updateCallback(request.getUpdateCallback());
+        }
+
+        if (request.getProgressCallback() != null) {
+            builder.progressCallback(request.getProgressCallback());
+        }
+
+        return builder.fetch(request.getUri());
     }
 
 }
@@ -0,0 +1,40 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+/**
+ * Priorities a request can have. Requests with a higher priority are downloaded first when
+ * there are more of them than the max concurrent downloads allowed.
+ *
+ * They are declared from the highest to the lowest.
+ */
+public enum Priority {
+
+    /**
+     * Needed right now, eg. the image the user is waiting for to continue.
+     */
+    IMMEDIATE,
+
+    /**
+     * Shown on screen. Default for the requests shown in a view.
+     */
+    VISIBLE,
+
+    /**
+     * Not shown yet but will probably be soon. Default for the requests that are only downloaded.
+     */
+    PREFETCH,
+
+    /**
+     * Only downloaded when theres nothing else to do.
+     */
+    IDLE;
+
+    /**
+     * Check if this priority is higher than other
+     * @param other priority to compare
+     * @return true if this one is higher
+     */
+    public boolean isHigherThan(Priority other) {
+        return ordinal() < other.ordinal();
+    }
+
+}
@@ -5,6 +5,8 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.saantiaguilera.dynamic_resources.internal.loading.FileCallback;
+import com.saantiaguilera.dynamic_resources.internal.loading.ProgressCallback;
+import com.saantiaguilera.dynamic_resources.internal.loading.UpdateCallback;
 
 import java.lang.ref.WeakReference;
 
@@ -20,22 +22,56 @@ import java.lang.ref.WeakReference;
 public class Request {
 
     private @Nullable WeakReference<FileCallback> callback;
+    private @Nullable WeakReference<UpdateCallback> updateCallback;
+    private @Nullable WeakReference<ProgressCallback> progressCallback;
     private @NonNull Uri uri;
+    private @NonNull Priority priority;
+    private @NonNull CachePolicy cachePolicy;
+    private @Nullable String partition;
+    private boolean pinned;
 
     /**
      * Private constructor
      * @param callback if existent
+     * @param updateCallback if existent
+     * @param progressCallback if existent
      * @param uri to fetch
+     * @param priority of the request
+     * @param cachePolicy of the request
+     * @param partition of the cache where the resource is kept, null for the default one
+     * @param pinned if the resource shouldnt be evicted
      */
     private Request(@Nullable FileCallback callback,
-                    @NonNull Uri uri) {
+                    @Nullable UpdateCallback updateCallback,
+                    @Nullable ProgressCallback progressCallback,
+                    @NonNull Uri uri,
+                    @NonNull Priority priority,
+                    @NonNull CachePolicy cachePolicy,
+                    @Nullable String partition,
+                    boolean pinned) {
         if (callback != null) {
             this.callback = new WeakReference<>(callback);
         } else {
             this.callback = null;
         }
 
+        if (updateCallback != null) {
+            this.updateCallback = new WeakReference<>(updateCallback);
+        } else {
+            this.updateCallback = null;
+        }
+
+        if (progressCallback != null) {
+            this.progressCallback = new WeakReference<>(progressCallback);
+        } else {
+            this.progressCallback = null;
+        }
+
         this.uri = uri;
+        this.priority = priority;
+        this.cachePolicy = cachePolicy;
+        this.partition = partition;
+        this.pinned = pinned;
     }
 
     /**
@@ -47,6 +83,41 @@ public class Request {
         return uri;
     }
 
+    /**
+     * Getter for the priority of the request
+     * @return priority
+     */
+    @NonNull
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Getter for how the cached resource is used
+     * @return cache policy
+     */
+    @NonNull
+    public CachePolicy getCachePolicy() {
+        return cachePolicy;
+    }
+
+    /**
+     * Getter for the partition of the cache where the resource is kept
+     * @return partition or null for the default one
+     */
+    @Nullable
+    public String getPartition() {
+        return partition;
+    }
+
+    /**
+     * Getter for if the resource is pinned in the cache
+     * @return true if it shouldnt be evicted
+     */
+    public boolean isPinned() {
+        return pinned;
+    }
+
     /**
      * Getter for the callback if exists
      * @return callback
@@ -56,13 +127,37 @@ public class Request {
         return callback == null ? null : callback.get();
     }
 
+    /**
+     * Getter for the update callback if exists
+     * @return update callback
+     */
+    @Nullable
+    public UpdateCallback getUpdateCallback() {
+        return updateCallback == null ? null : updateCallback.get();
+    }
+
+    /**
+     * Getter for the progress callback if exists
+     * @return progress callback
+     */
+    @Nullable
+    public ProgressCallback getProgressCallback() {
+        return progressCallback == null ? null : progressCallback.get();
+    }
+
     /**
      * Builder class for creating custom requests
      */
     public static class Builder {
 
         private WeakReference<FileCallback> callback;
+        private WeakReference<UpdateCallback> updateCallback;
+        private WeakReference<ProgressCallback> progressCallback;
         private Uri uri;
+        private Priority priority = Priority.VISIBLE;
+        private CachePolicy cachePolicy = CachePolicy.CACHE_FIRST;
+        private String partition = null;
+        private boolean pinned = false;
 
         /**
          * Empty constructor
@@ -79,6 +174,27 @@ public class Request {
             return this;
         }
 
+        /**
+         * Set a callback for when a resource served stale changed after refreshing it in background.
+         * Its only used with {@link CachePolicy#STALE_WHILE_REVALIDATE}
+         * @param updateCallback for receiving the new version of the resource
+         * @return Builder
+         */
+        public Builder updateCallback(@NonNull UpdateCallback updateCallback) {
+            this.updateCallback = new WeakReference<>(updateCallback);
+            return this;
+        }
+
+        /**
+         * Set a callback for the progress of the download. Its throttled and posted to the main thread
+         * @param progressCallback for receiving the progress
+         * @return Builder
+         */
+        public Builder progressCallback(@NonNull ProgressCallback progressCallback) {
+            this.progressCallback = new WeakReference<>(progressCallback);
+            return this;
+        }
+
         /**
          * Set the uri to fetch
          * @param uri to fetch
@@ -89,6 +205,46 @@ public class Request {
             return this;
         }
 
+        /**
+         * Set the priority of the request. By default its {@link Priority#VISIBLE}
+         * @param priority of the request
+         * @return Builder
+         */
+        public Builder priority(@NonNull Priority priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * Set how the cached resource is used. By default its {@link CachePolicy#CACHE_FIRST}
+         * @param cachePolicy of the request
+         * @return Builder
+         */
+        public Builder cachePolicy(@NonNull CachePolicy cachePolicy) {
+            this.cachePolicy = cachePolicy;
+            return this;
+        }
+
+        /**
+         * Set the partition of the cache where the resource is kept, if the cache supports them.
+         * By default its the default one
+         * @param partition name
+         * @return Builder
+         */
+        public Builder partition(@NonNull String partition) {
+            this.partition = partition;
+            return this;
+        }
+
+        /**
+         * Pin the resource in the cache, if it supports it, so its never evicted
+         * @return Builder
+         */
+        public Builder pin() {
+            this.pinned = true;
+            return this;
+        }
+
         /**
          * Build a Request with the given params
          * @return Request
@@ -97,7 +253,13 @@ public class Request {
             Validator.checkNullAndThrow(this, uri);
 
             return new Request(callback == null ? null : callback.get(),
-                    uri);
+                    updateCallback == null ? null : updateCallback.get(),
+                    progressCallback == null ? null : progressCallback.get(),
+                    uri,
+                    priority,
+                    cachePolicy,
+                    partition,
+                    pinned);
         }
 
     }
@@ -0,0 +1,55 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Exception for a response that wasnt successful (not a 2xx), so it wasnt cached.
+ */
+public class ResponseException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int code;
+    private final @NonNull Uri uri;
+
+    /**
+     * Constructor
+     * @param uri that was requested
+     * @param code of the response
+     * @param message of the response
+     */
+    public ResponseException(@NonNull Uri uri, int code, @NonNull String message) {
+        super("Unsuccessful response " + code + " " + message + " for " + uri);
+        this.uri = uri;
+        this.code = code;
+    }
+
+    /**
+     * Getter
+     * @return http code of the response
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Getter
+     * @return uri that was requested
+     */
+    public @NonNull Uri getUri() {
+        return uri;
+    }
+
+    /**
+     * Check if the response means the resource is missing or forbidden, so asking for it again
+     * right away will surely fail the same way
+     * @return true for client errors, except timeouts and throttling
+     */
+    public boolean isClientError() {
+        return code >= 400 && code < 500 && code != 408 && code != 429;
+    }
+
+}
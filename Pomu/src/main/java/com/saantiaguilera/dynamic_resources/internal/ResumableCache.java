@@ -0,0 +1,47 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+
+import okio.BufferedSource;
+
+/**
+ * Cache that keeps the bytes of downloads that didnt finish, so they can be resumed with a
+ * range request instead of downloaded again from the start.
+ *
+ * If a cache doesnt implement this, downloads always start from zero.
+ */
+public interface ResumableCache extends Cache {
+
+    /**
+     * Get the partial download of a key, if any.
+     * @param key of the resource
+     * @return partial download or null if theres none
+     */
+    @WorkerThread
+    @Nullable Partial getPartial(@NonNull Uri key);
+
+    /**
+     * Cache the data of a source with the given key, which continues (or starts) a partial download.
+     *
+     * If the source fails midway, the received bytes are kept so it can be resumed later. Once the
+     * source is exhausted the received bytes are checked against the total length, and if they
+     * match the resource is cached.
+     *
+     * @param key of the resource
+     * @param data source with the remaining bytes of the resource
+     * @param offset where the source starts. If its 0 any previous partial download is discarded
+     * @param validator ETag or Last-Modified of the response, null if it has none
+     * @param totalLength of the whole resource, or -1 if unknown
+     * @return File with the data stored for the given key
+     * @throws Exception if it couldnt be written or its incomplete
+     */
+    @WorkerThread
+    File put(@NonNull Uri key, @NonNull BufferedSource data, long offset,
+             @Nullable String validator, long totalLength) throws Exception;
+
+}
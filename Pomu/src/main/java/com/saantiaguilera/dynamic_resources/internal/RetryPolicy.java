@@ -0,0 +1,199 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Policy for retrying failed downloads. The delay between attempts grows exponentially, with a
+ * random jitter so a lot of downloads failing at the same time dont retry all at once.
+ *
+ * Network errors are always retryable, unsuccessful responses only if their code is one of
+ * the retryable ones (by default timeouts, throttling and server errors).
+ *
+ * Create it with RetryPolicy.create(), or use RetryPolicy.none() for never retrying.
+ */
+public final class RetryPolicy {
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 10 * 1000;
+    private static final double DEFAULT_MULTIPLIER = 2;
+    private static final double DEFAULT_JITTER = 0.2;
+    private static final Integer[] DEFAULT_RETRYABLE_CODES = { 408, 429, 500, 502, 503, 504 };
+
+    private static final Random random = new Random();
+
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final double multiplier;
+    private final double jitter;
+    private final @NonNull Set<Integer> retryableCodes;
+
+    /**
+     * Private constructor
+     */
+    private RetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff,
+                        double multiplier, double jitter, @NonNull Set<Integer> retryableCodes) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.retryableCodes = retryableCodes;
+    }
+
+    /**
+     * Create a new retry policy, starting from the defaults
+     * @return Builder
+     */
+    public static @NonNull Builder create() {
+        return new Builder();
+    }
+
+    /**
+     * Policy that never retries
+     * @return RetryPolicy
+     */
+    public static @NonNull RetryPolicy none() {
+        return create().maxAttempts(1).build();
+    }
+
+    /**
+     * Check if a failed attempt should be retried
+     * @param attempt number of the attempt that failed, starting from 1
+     * @param exception of the failure
+     * @return true if it should be retried
+     */
+    public boolean shouldRetry(int attempt, @NonNull Exception exception) {
+        if (attempt >= maxAttempts) {
+            return false;
+        }
+
+        if (exception instanceof ResponseException) {
+            return retryableCodes.contains(((ResponseException) exception).getCode());
+        }
+
+        return exception instanceof IOException;
+    }
+
+    /**
+     * Get how long to wait before retrying
+     * @param attempt number of the attempt that failed, starting from 1
+     * @return delay in millis
+     */
+    public long getDelay(int attempt) {
+        double delay = Math.min(maxBackoff, initialBackoff * Math.pow(multiplier, attempt - 1));
+        double spread = delay * jitter * (2 * random.nextDouble() - 1);
+
+        return Math.max(0, Math.round(delay + spread));
+    }
+
+    /**
+     * Getter
+     * @return max attempts of a download, including the first one
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Builder class for creating retry policies
+     */
+    public static class Builder {
+
+        private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        private long initialBackoff = DEFAULT_INITIAL_BACKOFF_MILLIS;
+        private long maxBackoff = DEFAULT_MAX_BACKOFF_MILLIS;
+        private double multiplier = DEFAULT_MULTIPLIER;
+        private double jitter = DEFAULT_JITTER;
+        private Set<Integer> retryableCodes = new HashSet<>(Arrays.asList(DEFAULT_RETRYABLE_CODES));
+
+        private Builder() {}
+
+        /**
+         * Set the max attempts of a download, including the first one
+         * @param maxAttempts at least 1
+         * @return Builder
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("Max attempts should be at least 1, got " + maxAttempts);
+            }
+
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Set the delay before the first retry, and the max one
+         * @param initialMillis delay before the first retry
+         * @param maxMillis max delay between retries
+         * @return Builder
+         */
+        public Builder backoff(long initialMillis, long maxMillis) {
+            if (initialMillis < 0 || maxMillis < initialMillis) {
+                throw new IllegalArgumentException("Invalid backoff " + initialMillis + "-" + maxMillis);
+            }
+
+            this.initialBackoff = initialMillis;
+            this.maxBackoff = maxMillis;
+            return this;
+        }
+
+        /**
+         * Set how much the delay grows after each retry
+         * @param multiplier of the delay, at least 1
+         * @return Builder
+         */
+        public Builder multiplier(double multiplier) {
+            if (multiplier < 1) {
+                throw new IllegalArgumentException("Multiplier should be at least 1, got " + multiplier);
+            }
+
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * Set the random spread of the delays, as a fraction of them
+         * @param jitter between 0 (no randomness) and 1
+         * @return Builder
+         */
+        public Builder jitter(double jitter) {
+            if (jitter < 0 || jitter > 1) {
+                throw new IllegalArgumentException("Jitter should be between 0 and 1, got " + jitter);
+            }
+
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * Set the codes of the unsuccessful responses that should be retried
+         * @param codes retryable
+         * @return Builder
+         */
+        public Builder retryableCodes(@NonNull Integer... codes) {
+            this.retryableCodes = new HashSet<>(Arrays.asList(codes));
+            return this;
+        }
+
+        /**
+         * Build the retry policy
+         * @return RetryPolicy
+         */
+        public @NonNull RetryPolicy build() {
+            return new RetryPolicy(maxAttempts, initialBackoff, maxBackoff,
+                    multiplier, jitter, Collections.unmodifiableSet(retryableCodes));
+        }
+
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+/**
+ * Cache that keeps the validators and freshness of its entries, so they can be revalidated
+ * against the server instead of being served forever.
+ *
+ * Putting data for a key already cached must replace it, since a revalidation might bring a
+ * new version of the resource.
+ *
+ * If a cache doesnt implement this, its entries are never revalidated.
+ */
+public interface RevalidatingCache extends Cache {
+
+    /**
+     * Get the metadata of a cached key
+     * @param key of the resource
+     * @return metadata or null if its not cached or it has none
+     */
+    @WorkerThread
+    @Nullable Metadata getMetadata(@NonNull Uri key);
+
+    /**
+     * Set the metadata of a cached key. If its not cached, nothing happens
+     * @param key of the resource
+     * @param metadata of the resource
+     */
+    @WorkerThread
+    void putMetadata(@NonNull Uri key, @NonNull Metadata metadata);
+
+}
@@ -0,0 +1,182 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Admits a bounded amount of concurrent downloads, starting the pending ones in priority order
+ * (and in the order they were scheduled for the same priority).
+ *
+ * A pending download can be boosted if someone with a higher priority asks for the same resource,
+ * eg. a prefetch that is now going to be shown.
+ */
+final class Scheduler {
+
+    private final int maxRunning;
+    private int running;
+    private long sequence;
+
+    private final TreeSet<Task> pending;
+    private final Map<String, Task> pendingByKey;
+
+    /**
+     * Tasks handed a slot while another one was started by finish() in the same thread. They are run
+     * by the outer finish() once the current one returns, so a chain of tasks that finish right away
+     * (eg. all the pending downloads of a host that is down) is drained in a loop instead of recursing
+     */
+    private final ThreadLocal<Deque<Runnable>> handedOver;
+
+    /**
+     * Constructor
+     * @param maxRunning max amount of downloads running at the same time
+     */
+    Scheduler(int maxRunning) {
+        this.maxRunning = maxRunning;
+        this.running = 0;
+        this.sequence = 0;
+        this.pending = new TreeSet<>(new TaskComparator());
+        this.pendingByKey = new HashMap<>();
+        this.handedOver = new ThreadLocal<>();
+    }
+
+    /**
+     * Schedule a download. It will run right away if theres room for it, else when a running one
+     * finishes and theres no other with higher priority.
+     *
+     * Every scheduled task must call finish() once its done.
+     *
+     * @param key of the resource being downloaded
+     * @param priority of the download
+     * @param runnable that starts the download
+     */
+    void schedule(@NonNull String key, @NonNull Priority priority, @NonNull Runnable runnable) {
+        synchronized (this) {
+            if (running >= maxRunning) {
+                Task task = new Task(key, priority, sequence++, runnable);
+                pending.add(task);
+                pendingByKey.put(key, task);
+                return;
+            }
+
+            running++;
+        }
+
+        runnable.run();
+    }
+
+    /**
+     * Raise the priority of a pending download. If its already running or the priority
+     * isnt higher, nothing happens
+     *
+     * @param key of the resource being downloaded
+     * @param priority requested for it
+     */
+    synchronized void boost(@NonNull String key, @NonNull Priority priority) {
+        Task task = pendingByKey.get(key);
+
+        if (task != null && priority.isHigherThan(task.priority)) {
+            pending.remove(task);
+            task.priority = priority;
+            pending.add(task);
+        }
+    }
+
+    /**
+     * Cancel a pending download, so it never starts. If its already running, nothing happens
+     *
+     * @param key of the resource being downloaded
+     * @param runnable that was scheduled for it
+     */
+    synchronized void cancel(@NonNull String key, @NonNull Runnable runnable) {
+        Task task = pendingByKey.get(key);
+
+        if (task != null && task.runnable == runnable) {
+            pending.remove(task);
+            pendingByKey.remove(key);
+        }
+    }
+
+    /**
+     * Notify a running download finished, starting the next pending one if any
+     */
+    void finish() {
+        Task next;
+
+        synchronized (this) {
+            next = pending.pollFirst();
+
+            if (next == null) {
+                running = Math.max(0, running - 1);
+                return;
+            }
+
+            if (pendingByKey.get(next.key) == next) {
+                pendingByKey.remove(next.key);
+            }
+        }
+
+        //The slot of the finished one is passed to the next one
+        Deque<Runnable> handed = handedOver.get();
+        if (handed != null) {
+            //A finish() down the stack is draining, it will run it
+            handed.add(next.runnable);
+            return;
+        }
+
+        handed = new ArrayDeque<>();
+        handedOver.set(handed);
+        try {
+            Runnable runnable = next.runnable;
+            while (runnable != null) {
+                runnable.run();
+                runnable = handed.poll();
+            }
+        } finally {
+            handedOver.remove();
+        }
+    }
+
+    /**
+     * A pending download
+     */
+    private static class Task {
+
+        private @NonNull String key;
+        private @NonNull Priority priority;
+        private long sequence;
+        private @NonNull Runnable runnable;
+
+        Task(@NonNull String key, @NonNull Priority priority, long sequence, @NonNull Runnable runnable) {
+            this.key = key;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+
+    }
+
+    /**
+     * Comparator class to sort the tasks from highest to lowest priority, and from first to last
+     * scheduled for the same one
+     */
+    private static class TaskComparator implements Comparator<Task> {
+
+        @Override
+        public int compare(Task lhs, Task rhs) {
+            int byPriority = lhs.priority.compareTo(rhs.priority);
+            if (byPriority != 0) {
+                return byPriority;
+            }
+
+            return Long.valueOf(lhs.sequence).compareTo(rhs.sequence);
+        }
+
+    }
+
+}
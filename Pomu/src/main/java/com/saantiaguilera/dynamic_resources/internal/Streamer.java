@@ -1,29 +1,37 @@
 package com.saantiaguilera.dynamic_resources.internal;
 
 import android.net.Uri;
-import android.os.Handler;
-import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.util.SparseArray;
-import android.widget.ImageView;
+import android.support.annotation.WorkerThread;
 
 import com.saantiaguilera.dynamic_resources.internal.loading.FileCallback;
+import com.saantiaguilera.dynamic_resources.internal.loading.ProgressCallback;
+import com.saantiaguilera.dynamic_resources.internal.loading.UpdateCallback;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import okhttp3.CacheControl;
-import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
 
 /**
  * Inner class that performs the networking fetches of a request + cache calls if already exists
@@ -31,7 +39,28 @@ import okhttp3.Response;
  *
  * Created by saguilera on 8/25/16.
  */
-final class Streamer {
+final class Streamer implements Cancelable {
+
+    /**
+     * Headers for resuming downloads
+     */
+    private static final String HEADER_RANGE = "Range";
+    private static final String HEADER_IF_RANGE = "If-Range";
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String WEAK_ETAG_PREFIX = "W/";
+
+    /**
+     * Headers for revalidating cached resources
+     */
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final int HTTP_SERVER_ERROR = 500;
 
     private @NonNull OkHttpClient client;
 
@@ -43,20 +72,54 @@ final class Streamer {
      * It wont leak because we are the ones using it only :)
      */
     private @Nullable FileCallback callback;
+    private @Nullable UpdateCallback updateCallback;
+    private @Nullable ProgressCallback progressCallback;
     private @NonNull Uri uri;
 
     private @NonNull Cache cache;
 
+    //Uris known to be missing, if any
+    private @Nullable NegativeCache negativeCache;
+
+    //How failed downloads are retried, and where the retries wait. Without a timer they arent retried
+    private @NonNull RetryPolicy retryPolicy;
+    private @Nullable ScheduledExecutorService retryTimer;
+
+    //Hosts failing too much, if any
+    private @Nullable CircuitBreaker circuitBreaker;
+
+    //Where the cache is probed before going to the network
+    private @NonNull Executor ioExecutor;
+
+    //Where the responses are written to the cache
+    private @NonNull Executor writeExecutor;
+
+    //Admits the downloads according to their priority
+    private @NonNull Scheduler scheduler;
+    private @NonNull Priority priority;
+
+    //How the cached resource is used, and the metadata of the one being revalidated if any
+    private @NonNull CachePolicy cachePolicy;
+    private @Nullable Metadata validation;
+
+    //If this streamer refreshes a resource that was served stale, and the one doing it for this one if any
+    private boolean refresh;
+    private volatile @Nullable Streamer refreshing;
+
+    //Call in flight this streamer is waiting for, if any
+    private volatile @Nullable Call call;
+    private volatile boolean canceled;
+
     /**
      * To avoid duplicate requests at the same time in case theres a race condition.
      * Eg: We dont have image1 so we have to download it
      * User uses pomu to show image1 twice (in 2 image views at the same time)
      * Image might be downloaded twice !! (this of course can happen with n downloads atm)
+     *
+     * Calls are mapped by the key of the resource, so joining an existing one is constant time
+     * no matter how many are in flight.
      */
-    private @Nullable static List<Call> currentCalls = null;
-
-    //For writing files
-    private static final ExecutorService executor = Executors.newFixedThreadPool(1);
+    private @Nullable static ConcurrentMap<String, Call> currentCalls = null;
 
     /**
      * Creator of a streamer immutable object
@@ -66,11 +129,11 @@ final class Streamer {
         return new Builder();
     }
 
-    private static List<Call> getCurrentCalls() {
+    private static ConcurrentMap<String, Call> getCurrentCalls() {
         if (currentCalls == null) {
             synchronized (Streamer.class) {
                 if (currentCalls == null) {
-                    currentCalls = new CopyOnWriteArrayList<>();
+                    currentCalls = new ConcurrentHashMap<>();
                 }
             }
         }
@@ -78,115 +141,579 @@ final class Streamer {
         return currentCalls;
     }
 
+    /**
+     * Get the key of a resource for the in flight calls. Its the same the cache uses to store it
+     * @param uri of the resource
+     * @return key of the resource
+     */
+    private static @NonNull String key(@NonNull Uri uri) {
+        return uri.toString();
+    }
+
     /**
      * Private constructor
      * @param client for networking calls
      * @param callback for status
+     * @param updateCallback for the background refreshes
      * @param cache cache used for the images
+     * @param ioExecutor where the cache is probed
+     * @param writeExecutor where the responses are written
+     * @param scheduler that admits the downloads
+     * @param priority of the download
+     * @param cachePolicy how the cached resource is used
      * @param uri to fetch
      */
     @SuppressWarnings("ConstantConditions")
     private Streamer(@Nullable OkHttpClient client,
                      @Nullable FileCallback callback,
+                     @Nullable UpdateCallback updateCallback,
                      @Nullable Cache cache,
+                     @Nullable Executor ioExecutor,
+                     @Nullable Executor writeExecutor,
+                     @Nullable Scheduler scheduler,
+                     @NonNull Priority priority,
+                     @NonNull CachePolicy cachePolicy,
                      @NonNull Uri uri) {
-        Validator.checkNullAndThrow(this, client, cache, uri);
+        Validator.checkNullAndThrow(this, client, cache, ioExecutor, writeExecutor, scheduler, priority, cachePolicy, uri);
         this.client = client;
         this.cache = cache;
+        this.ioExecutor = ioExecutor;
+        this.writeExecutor = writeExecutor;
+        this.scheduler = scheduler;
+        this.priority = priority;
+        this.cachePolicy = cachePolicy;
+        this.validation = null;
         this.callback = callback;
+        this.updateCallback = updateCallback;
         this.uri = uri;
+        this.negativeCache = null;
+        this.progressCallback = null;
+        this.retryPolicy = RetryPolicy.none();
+        this.retryTimer = null;
+        this.circuitBreaker = null;
+        this.refresh = false;
+        this.refreshing = null;
+        this.call = null;
+        this.canceled = false;
+    }
+
+    /**
+     * Stop waiting for the uri. If no one else waits for it, its download is stopped too.
+     */
+    @Override
+    public void cancel() {
+        canceled = true;
+
+        Call joined = call;
+        if (joined != null) {
+            joined.remove(this, scheduler);
+        }
+
+        Streamer background = refreshing;
+        if (background != null) {
+            background.cancel();
+        }
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled;
     }
 
     /**
      * Fetch the given Uri from network if cache doesnt has it, else retreive it from cache
      * and callback to user.
      *
-     * Runs on UI Thread or worker thread
+     * Runs on UI Thread or worker thread. The cache is always probed in the io executor, only the
+     * results are posted back to the main thread.
      */
-    @SuppressWarnings("SuspiciousMethodCalls")
     private void fetch() {
-        if (cache.contains(uri)) {
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                probe();
+            }
+        });
+    }
+
+    /**
+     * Look for the uri in the cache, and if its not there fetch it from the network.
+     *
+     * Runs on the io executor
+     */
+    @WorkerThread
+    private void probe() {
+        if (canceled) {
+            return;
+        }
+
+        File cached = cache.get(uri);
+
+        if (cached != null && cachePolicy == CachePolicy.STALE_WHILE_REVALIDATE) {
             if (callback != null) {
-                new Handler(Looper.getMainLooper()).postAtFrontOfQueue(
-                        new SuccessRunnable(new Call(null, callback), cache.get(uri)));
+                Dispatcher.get().postAtFrontOfQueue(
+                        new SuccessRunnable(Collections.singletonList(this), cached, false));
+            }
+
+            if (isStale()) {
+                refresh();
             }
             return;
         }
 
+        if (cached != null) {
+            validation = getRevalidation();
+
+            //A background refresh of a resource without validators downloads it again unconditionally
+            if (validation == null && !refresh) {
+                if (callback != null) {
+                    Dispatcher.get().postAtFrontOfQueue(
+                            new SuccessRunnable(Collections.singletonList(this), cached, false));
+                }
+                return;
+            }
+        } else if (negativeCache != null) {
+            ResponseException missing = negativeCache.get(uri);
+
+            if (missing != null) {
+                //We already know its not there, dont ask again so soon
+                if (callback != null) {
+                    Dispatcher.get().post(
+                            new FailureRunnable(Collections.singletonList(this), missing));
+                }
+                return;
+            }
+        }
+
+        boolean owner = join();
+
+        final Call currentCall = call;
+        if (canceled) {
+            //Canceled while joining, leave the call (it might have missed it)
+            currentCall.remove(this, scheduler);
+            return;
+        }
+
+        if (!owner) {
+            //The request is already executing for this uri, avoid doing it more than once at the same time
+            return;
+        }
+
+        schedule(currentCall);
+    }
+
+    /**
+     * Schedule the download of the call, it will start once the scheduler admits it
+     * @param currentCall in flight for the uri
+     */
+    private void schedule(@NonNull final Call currentCall) {
+        currentCall.schedule(scheduler, priority, new Runnable() {
+            @Override
+            public void run() {
+                download(currentCall);
+            }
+        });
+    }
+
+    /**
+     * Retry a failed download after a backoff if the retry policy allows it, else notify the failure
+     * to all the waiters.
+     *
+     * @param currentCall in flight for the uri
+     * @param exception of the failed attempt
+     */
+    private void retryOrFail(@NonNull final Call currentCall, @NonNull Exception exception) {
+        int attempt = currentCall.getAttempts();
+
+        if (retryTimer != null && retryPolicy.shouldRetry(attempt, exception)) {
+            //Waiters stay attached meanwhile, if all of them leave the retry wont be scheduled
+            retryTimer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    schedule(currentCall);
+                }
+            }, retryPolicy.getDelay(attempt), TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        Dispatcher.get().post(new FailureRunnable(currentCall.complete(), exception));
+    }
+
+    /**
+     * Get the host of the uri, for the circuit breaker
+     * @return host of the uri
+     */
+    private @NonNull String getHost() {
+        String host = uri.getHost();
+        return host == null ? "" : host;
+    }
+
+    /**
+     * Refresh the resource in background with the lowest priority, notifying the update callback
+     * if it changed. Canceling this streamer cancels the refresh too.
+     */
+    @WorkerThread
+    private void refresh() {
+        Streamer background = new Streamer(client, null, updateCallback, cache,
+                ioExecutor, writeExecutor, scheduler,
+                Priority.IDLE, CachePolicy.REVALIDATE, uri);
+        background.negativeCache = negativeCache;
+        background.retryPolicy = retryPolicy;
+        background.retryTimer = retryTimer;
+        background.circuitBreaker = circuitBreaker;
+        background.refresh = true;
+
+        refreshing = background;
+        if (canceled) {
+            //Canceled while creating it, it might have missed it
+            return;
+        }
+
+        background.probe();
+    }
+
+    /**
+     * Check if the cached resource is stale, and should be refreshed after serving it. If its metadata
+     * isnt known (eg. the index of the cache isnt loaded yet) its served as is
+     *
+     * @return true if its stale
+     */
+    @WorkerThread
+    private boolean isStale() {
+        if (!(cache instanceof RevalidatingCache)) {
+            return false;
+        }
+
+        Metadata metadata = ((RevalidatingCache) cache).getMetadata(uri);
+        return metadata != null && !metadata.isFresh(System.currentTimeMillis());
+    }
+
+    /**
+     * Get the metadata of the cached resource if it has to be revalidated, according to the
+     * cache policy
+     *
+     * @return metadata to revalidate it with, or null if the cached resource can be used as is
+     */
+    @WorkerThread
+    private @Nullable Metadata getRevalidation() {
+        if (cachePolicy == CachePolicy.CACHE_FIRST || !(cache instanceof RevalidatingCache)) {
+            return null;
+        }
+
+        Metadata metadata = ((RevalidatingCache) cache).getMetadata(uri);
+        if (metadata == null || !metadata.hasValidators()) {
+            //Theres no way of revalidating it cheaply
+            return null;
+        }
+
+        if (cachePolicy != CachePolicy.REVALIDATE && metadata.isFresh(System.currentTimeMillis())) {
+            return null;
+        }
+
+        return metadata;
+    }
+
+    /**
+     * Download the uri from the network. Runs once the scheduler admits it
+     * @param currentCall in flight for the uri
+     */
+    private void download(@NonNull final Call currentCall) {
+        final String host = getHost();
+        if (circuitBreaker != null && !circuitBreaker.allow(host)) {
+            //Its down, fail fast instead of hammering it
+            scheduler.finish();
+            Dispatcher.get().post(new FailureRunnable(currentCall.complete(),
+                    new IOException("Circuit open for " + host + ", not fetching " + uri)));
+            return;
+        }
+
         //Dont cache in network, because we will have it downloaded.
         CacheControl cacheControl = new CacheControl.Builder()
                 .noCache()
                 .noStore()
                 .build();
 
-        Request request = new Request.Builder()
+        Request.Builder builder = new Request.Builder()
                 .url(uri.toString())
                 .cacheControl(cacheControl)
-                .get().build();
+                .get();
+
+        //If we have it, only download it again if it changed
+        if (validation != null) {
+            if (validation.getEtag() != null) {
+                builder.header(HEADER_IF_NONE_MATCH, validation.getEtag());
+            }
+            if (validation.getLastModified() != null) {
+                builder.header(HEADER_IF_MODIFIED_SINCE, validation.getLastModified());
+            }
+        }
+
+        //If a previous download didnt finish, ask only for what we are missing as long as its the same resource
+        final Partial partial = validation == null && cache instanceof ResumableCache ?
+                ((ResumableCache) cache).getPartial(uri) : null;
+        if (partial != null && partial.isResumable()) {
+            builder.header(HEADER_RANGE, "bytes=" + partial.getLength() + "-")
+                    .header(HEADER_IF_RANGE, partial.getValidator());
+        }
+
+        Request request = builder.build();
 
         okhttp3.Call call = client.newCall(request);
-        Call currentCall = get(call);
+        if (!currentCall.start(call)) {
+            //Everyone stopped waiting for it before it started
+            abandon(host);
+            scheduler.finish();
+            return;
+        }
 
-        if (currentCall != null) {
-            //If the request is already executing for this uri, avoid doing it more than once at the same time
-            if (callback != null) {
-                currentCall.add(callback);
+        call.enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(okhttp3.Call call, IOException e) {
+                scheduler.finish();
+
+                if (call.isCanceled()) {
+                    abandon(host);
+                    currentCall.complete();
+                    return;
+                }
+
+                if (circuitBreaker != null) {
+                    circuitBreaker.onFailure(host);
+                }
+
+                retryOrFail(currentCall, e);
             }
-        } else {
-            getCurrentCalls().add(new Call(call, callback));
-            call.enqueue(new okhttp3.Callback() {
-                @Override
-                public void onFailure(okhttp3.Call call, IOException e) {
-                    if (!call.isCanceled()) {
-                        new Handler(Looper.getMainLooper()).post(new FailureRunnable(get(call), e));
-                    }
+
+            @Override
+            public void onResponse(final okhttp3.Call call, final Response response) throws IOException {
+                if (call.isCanceled()) {
+                    abandon(host);
+                    currentCall.complete();
+                    scheduler.finish();
+                    response.body().close();
+                    return;
                 }
 
-                @Override
-                public void onResponse(final okhttp3.Call call, final Response response) throws IOException {
-                    if (!call.isCanceled()) {
-                        executor.submit(new Runnable() {
-                            @Override
-                            public void run() {
-                                if (response != null) {
-                                    Streamer.this.onResponse(call, response);
-                                }
-                            }
-                        });
+                writeExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Streamer.this.onResponse(currentCall, response, partial);
                     }
-                }
-            });
+                });
+            }
+        });
+    }
+
+    /**
+     * Notify the circuit breaker a download let through wont report back, so if it was probing the
+     * host another one can probe it
+     * @param host of the download
+     */
+    private void abandon(@NonNull String host) {
+        if (circuitBreaker != null) {
+            circuitBreaker.onAbandoned(host);
         }
     }
 
+    /**
+     * Join the in flight call for the uri, or register a new one if theres none.
+     *
+     * Registering and joining are atomic, so two fetches of the same uri never both think
+     * they are the first one.
+     *
+     * @return true if this fetch registered the call and has to perform it, false if it joined an
+     * existing one
+     */
+    @WorkerThread
+    private boolean join() {
+        String key = key(uri);
+        Call newCall = new Call(key, this);
+
+        Call existing = getCurrentCalls().putIfAbsent(key, newCall);
+        while (existing != null) {
+            if (existing.add(this)) {
+                call = existing;
+                //If its still waiting for its turn, it should wait as much as this one at most
+                scheduler.boost(key, priority);
+                return false;
+            }
+
+            //It completed while joining it, take its place
+            if (getCurrentCalls().replace(key, existing, newCall)) {
+                break;
+            }
+
+            existing = getCurrentCalls().putIfAbsent(key, newCall);
+        }
+
+        call = newCall;
+        return true;
+    }
+
     /**
      * Method for successfully downloading the image
+     * @param call in flight for the uri
      * @param response from network
+     * @param partial download that was requested to be resumed, if any
      */
-    private void onResponse(@NonNull okhttp3.Call call, @NonNull Response response) {
+    @WorkerThread
+    private void onResponse(@NonNull Call call, @NonNull Response response, @Nullable Partial partial) {
+        if (circuitBreaker != null) {
+            //The host answered, but server errors mean its in trouble
+            if (response.code() >= HTTP_SERVER_ERROR) {
+                circuitBreaker.onFailure(getHost());
+            } else {
+                circuitBreaker.onSuccess(getHost());
+            }
+        }
+
+        boolean restart = false;
         try {
-            File file;
+            File file = cache.get(uri);
+            boolean changed = false;
 
-            if (cache.contains(uri)) {
-                file = cache.get(uri);
+            if (file != null) {
+                if (validation != null && response.code() == HTTP_NOT_MODIFIED) {
+                    //Its still the same, just refresh its metadata
+                    ((RevalidatingCache) cache).putMetadata(uri, validation.refresh(response, System.currentTimeMillis()));
+                } else if (response.isSuccessful()) {
+                    file = write(call, response, partial);
+                    changed = true;
+                }
+                //Else keep serving the one we have
             } else {
-                file = cache.put(uri, response.body().byteStream());
+                if (response.code() == HTTP_NOT_MODIFIED) {
+                    if (validation != null) {
+                        //It was evicted while revalidating it, ask again for the whole resource
+                        validation = null;
+                        restart = true;
+                        return;
+                    }
+                    throw new IOException("Revalidated " + uri + " but its not cached anymore");
+                }
+
+                if (partial != null && response.code() == HTTP_RANGE_NOT_SATISFIABLE) {
+                    //Our partial data is useless, ask again for the whole resource
+                    partial.delete();
+                    restart = true;
+                    return;
+                }
+
+                if (!response.isSuccessful()) {
+                    //Never cache error pages under the resource key
+                    ResponseException exception = new ResponseException(uri, response.code(), response.message());
+
+                    if (negativeCache != null) {
+                        negativeCache.put(exception);
+                    }
+                    throw exception;
+                }
+
+                file = write(call, response, partial);
+                changed = true;
             }
 
-            new Handler(Looper.getMainLooper()).post(new SuccessRunnable(get(call), file));
+            Dispatcher.get().post(new SuccessRunnable(call.complete(), file, changed));
         } catch (Exception e) {
-            new Handler(Looper.getMainLooper()).post(new FailureRunnable(get(call), e));
+            retryOrFail(call, e);
+        } finally {
+            response.body().close();
+            scheduler.finish();
+
+            if (restart) {
+                //Its not a failed attempt, so it doesnt go through the retry policy
+                schedule(call);
+            }
+        }
+    }
+
+    /**
+     * Write a response to the cache, with its metadata if the cache keeps it
+     * @param call in flight for the uri, its waiters are notified of the progress
+     * @param response from network
+     * @param partial download that was requested to be resumed, if any
+     * @return File with the data stored
+     * @throws Exception if it couldnt be written
+     */
+    @WorkerThread
+    private @NonNull File write(@NonNull Call call, @NonNull Response response, @Nullable Partial partial) throws Exception {
+        File file;
+        if (cache instanceof ResumableCache) {
+            file = resume(call, (ResumableCache) cache, response, partial);
+        } else {
+            ResponseBody body = response.body();
+            file = cache.put(uri, track(call, body.source(), 0, body.contentLength()));
         }
+
+        if (cache instanceof RevalidatingCache) {
+            ((RevalidatingCache) cache).putMetadata(uri, Metadata.from(response, System.currentTimeMillis()));
+        }
+
+        return file;
     }
 
-    private @Nullable Call get(okhttp3.Call call) {
-        for (Call obj : getCurrentCalls()) {
-            if (obj.equals(call)) {
-                return obj;
+    /**
+     * Write a response to a resumable cache. If the server honored the range it continues the
+     * partial download, else (the resource changed or ranges arent supported) it starts again.
+     *
+     * @param call in flight for the uri, its waiters are notified of the progress
+     * @param cache where the response will be written
+     * @param response from network
+     * @param partial download that was requested to be resumed, if any
+     * @return File with the data stored
+     * @throws Exception if it couldnt be written or its incomplete
+     */
+    @WorkerThread
+    private @NonNull File resume(@NonNull Call call, @NonNull ResumableCache cache, @NonNull Response response,
+                                 @Nullable Partial partial) throws Exception {
+        ResponseBody body = response.body();
+
+        long offset = 0;
+        if (response.code() == HTTP_PARTIAL_CONTENT) {
+            String contentRange = response.header(HEADER_CONTENT_RANGE);
+
+            if (partial == null || contentRange == null ||
+                    !contentRange.startsWith("bytes " + partial.getLength() + "-")) {
+                throw new IOException("Unexpected range " + contentRange + " for " + uri);
             }
+
+            offset = partial.getLength();
         }
 
-        return null;
+        long totalLength = body.contentLength() < 0 ? -1 : offset + body.contentLength();
+
+        return cache.put(uri, track(call, body.source(), offset, totalLength),
+                offset, getValidator(response), totalLength);
+    }
+
+    /**
+     * Count the bytes read from a response body, notifying the progress to the waiters of the call
+     * @param call in flight for the uri
+     * @param source of the body
+     * @param offset bytes already downloaded before this body
+     * @param contentLength of the whole resource, or -1 if unknown
+     * @return source that tracks the progress
+     */
+    private static @NonNull BufferedSource track(@NonNull Call call, @NonNull BufferedSource source,
+                                                 long offset, long contentLength) {
+        return Okio.buffer(new ProgressSource(source, new ProgressRunnable(call, offset, contentLength)));
+    }
+
+    /**
+     * Get the validator of a response, so a partial download of it can be resumed later.
+     * Weak ETags cant be used in an If-Range, so in that case the Last-Modified is used.
+     *
+     * @param response from network
+     * @return validator or null if it has none
+     */
+    private static @Nullable String getValidator(@NonNull Response response) {
+        String etag = response.header(HEADER_ETAG);
+
+        if (etag != null && !etag.startsWith(WEAK_ETAG_PREFIX)) {
+            return etag;
+        }
+
+        return response.header(HEADER_LAST_MODIFIED);
     }
 
     /**
@@ -196,8 +723,20 @@ final class Streamer {
 
         private OkHttpClient client = null;
         private FileCallback callback = null;
+        private UpdateCallback updateCallback = null;
+        private ProgressCallback progressCallback = null;
 
         private Cache cache = null;
+        private NegativeCache negativeCache = null;
+        private RetryPolicy retryPolicy = RetryPolicy.none();
+        private ScheduledExecutorService retryTimer = null;
+        private CircuitBreaker circuitBreaker = null;
+        private Executor ioExecutor = null;
+        private Executor writeExecutor = null;
+
+        private Scheduler scheduler = null;
+        private Priority priority = Priority.VISIBLE;
+        private CachePolicy cachePolicy = CachePolicy.CACHE_FIRST;
 
         /**
          * Empty constructor
@@ -224,6 +763,26 @@ final class Streamer {
             return this;
         }
 
+        /**
+         * Set a callback for when a resource served stale changed after refreshing it
+         * @param updateCallback for receiving the new version
+         * @return Builder
+         */
+        public Builder updateCallback(@NonNull UpdateCallback updateCallback) {
+            this.updateCallback = updateCallback;
+            return this;
+        }
+
+        /**
+         * Set a callback for the progress of the download
+         * @param progressCallback for receiving the progress
+         * @return Builder
+         */
+        public Builder progressCallback(@NonNull ProgressCallback progressCallback) {
+            this.progressCallback = progressCallback;
+            return this;
+        }
+
         /**
          * Set custom cache for managing the images in disk
          * @param cache used for managing the images in disk
@@ -234,6 +793,88 @@ final class Streamer {
             return this;
         }
 
+        /**
+         * Set the cache of the uris known to be missing
+         * @param negativeCache of the missing uris
+         * @return Builder
+         */
+        public Builder negativeCache(@NonNull NegativeCache negativeCache) {
+            this.negativeCache = negativeCache;
+            return this;
+        }
+
+        /**
+         * Set how failed downloads are retried
+         * @param retryPolicy for the failed downloads
+         * @param retryTimer where the retries wait their backoff
+         * @return Builder
+         */
+        public Builder retry(@NonNull RetryPolicy retryPolicy, @NonNull ScheduledExecutorService retryTimer) {
+            this.retryPolicy = retryPolicy;
+            this.retryTimer = retryTimer;
+            return this;
+        }
+
+        /**
+         * Set the circuit breaker of the failing hosts
+         * @param circuitBreaker for the hosts
+         * @return Builder
+         */
+        public Builder circuitBreaker(@NonNull CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * Set the executor where the cache will be probed
+         * @param executor for I/O work
+         * @return Builder
+         */
+        public Builder ioExecutor(@NonNull Executor executor) {
+            this.ioExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Set the executor where the responses will be written to the cache
+         * @param executor for disk writes
+         * @return Builder
+         */
+        public Builder writeExecutor(@NonNull Executor executor) {
+            this.writeExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Set the scheduler that admits the downloads
+         * @param scheduler for the downloads
+         * @return Builder
+         */
+        public Builder scheduler(@NonNull Scheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Set the priority of the download
+         * @param priority of the download
+         * @return Builder
+         */
+        public Builder priority(@NonNull Priority priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * Set how the cached resource is used
+         * @param cachePolicy of the request
+         * @return Builder
+         */
+        public Builder cachePolicy(@NonNull CachePolicy cachePolicy) {
+            this.cachePolicy = cachePolicy;
+            return this;
+        }
+
         /**
          * Create a streamer and fetch the given uri
          * @param uri to fetch from network or cache if already exists
@@ -244,8 +885,19 @@ final class Streamer {
 
             Streamer streamer = new Streamer(client,
                     callback == null ? null : callback,
+                    updateCallback,
                     cache,
+                    ioExecutor,
+                    writeExecutor,
+                    scheduler,
+                    priority,
+                    cachePolicy,
                     uri);
+            streamer.negativeCache = negativeCache;
+            streamer.progressCallback = progressCallback;
+            streamer.retryPolicy = retryPolicy;
+            streamer.retryTimer = retryTimer;
+            streamer.circuitBreaker = circuitBreaker;
             streamer.fetch();
             return streamer;
         }
@@ -257,26 +909,20 @@ final class Streamer {
      */
     static class FailureRunnable implements Runnable {
         private @NonNull Exception exception;
-        private @Nullable Call call;
+        private @NonNull List<Streamer> waiters;
 
-        FailureRunnable(@Nullable Call call, @NonNull Exception e) {
+        FailureRunnable(@NonNull List<Streamer> waiters, @NonNull Exception e) {
             this.exception = e;
-            this.call = call;
+            this.waiters = waiters;
         }
 
         @Override
         public void run() {
-            if (call != null) {
-                for (FileCallback callback : call.getCallbacks()) {
-                    if (callback != null) {
-                        callback.onFailure(exception);
-                    }
+            for (Streamer waiter : waiters) {
+                //A failed background refresh is silent, the stale resource was already served
+                if (waiter.callback != null && !waiter.refresh && !waiter.isCanceled()) {
+                    waiter.callback.onFailure(exception);
                 }
-
-                // To avoid possible mem leaks
-                call.getCallbacks().clear();
-                // Remove it to avoid staggering...
-                getCurrentCalls().remove(call);
             }
         }
     }
@@ -286,70 +932,312 @@ final class Streamer {
      */
     static class SuccessRunnable implements Runnable {
         private @Nullable File file;
-        private @Nullable Call call;
+        private @NonNull List<Streamer> waiters;
+        private boolean changed;
 
-        SuccessRunnable(@Nullable Call call, @Nullable File file) {
+        SuccessRunnable(@NonNull List<Streamer> waiters, @Nullable File file, boolean changed) {
             this.file = file;
-            this.call = call;
+            this.waiters = waiters;
+            this.changed = changed;
         }
 
         @Override
         public void run() {
-            if (call != null && file != null) {
-                for (FileCallback callback : call.getCallbacks()) {
-                    if (callback != null) {
-                        callback.onSuccess(file);
+            if (file != null) {
+                for (Streamer waiter : waiters) {
+                    if (waiter.isCanceled()) {
+                        continue;
                     }
-                }
 
-                // To avoid possible mem leaks
-                call.getCallbacks().clear();
-                // Remove it to avoid staggering...
-                getCurrentCalls().remove(call);
+                    if (waiter.refresh) {
+                        //Background refreshes only notify if there was something new
+                        if (changed && waiter.updateCallback != null) {
+                            waiter.updateCallback.onUpdate(file);
+                        }
+                    } else if (waiter.callback != null) {
+                        waiter.callback.onSuccess(file);
+                    }
+                }
             }
         }
     }
 
-    static class Call {
+    /**
+     * Inner class that posts the progress of a download to the waiters of its call.
+     *
+     * Its throttled to MAX_UPDATES_PER_SECOND, and coalesced: while an update is pending in the
+     * main thread no other is posted, and when it runs it reports the latest progress.
+     * Once the body ends its last progress is always posted, so it arrives before the success.
+     */
+    static class ProgressRunnable implements Runnable {
+
+        private static final int MAX_UPDATES_PER_SECOND = 10;
+        private static final long MIN_INTERVAL_MILLIS = 1000 / MAX_UPDATES_PER_SECOND;
 
-        private @Nullable okhttp3.Call call;
-        private @NonNull List<FileCallback> callbacks;
+        private final @NonNull Call call;
+        private final long offset;
+        private final long contentLength;
 
-        public Call(@Nullable okhttp3.Call call, @Nullable FileCallback callback) {
+        //Written by the writer thread, read by the main one
+        private volatile long read;
+        private final @NonNull AtomicBoolean pending;
+        private long lastPost;
+
+        //Written by the main thread, read by the writer one
+        private volatile long reported;
+
+        //Waiters once the body ended, since the call forgets them when its completed
+        private volatile @Nullable List<Streamer> finished;
+
+        ProgressRunnable(@NonNull Call call, long offset, long contentLength) {
             this.call = call;
-            this.callbacks = new ArrayList<>();
+            this.offset = offset;
+            this.contentLength = contentLength;
+            this.read = 0;
+            this.pending = new AtomicBoolean(false);
+            this.lastPost = 0;
+            this.reported = 0;
+            this.finished = null;
+        }
 
-            if (callback != null) {
-                this.callbacks.add(callback);
+        /**
+         * Notify more bytes were read. Runs in the writer thread
+         * @param read bytes of the body read so far
+         */
+        void update(long read) {
+            this.read = read;
+
+            if (!call.hasProgressCallbacks()) {
+                return;
+            }
+
+            long now = SystemClock.uptimeMillis();
+            if (now - lastPost >= MIN_INTERVAL_MILLIS && pending.compareAndSet(false, true)) {
+                lastPost = now;
+                Dispatcher.get().post(this);
             }
         }
 
-        public void add(@NonNull FileCallback callback) {
-            callbacks.add(callback);
+        /**
+         * Notify the body ended, posting its last progress if the throttling skipped it.
+         * Runs in the writer thread, before the call is completed and its success posted
+         */
+        void finish() {
+            if (!call.hasProgressCallbacks()) {
+                return;
+            }
+
+            //A pending update might run after the call completed, so keep who to notify
+            finished = call.getWaiters();
+            if (read == reported) {
+                return;
+            }
+
+            //If one is pending it will report the latest progress anyway
+            if (pending.compareAndSet(false, true)) {
+                Dispatcher.get().post(this);
+            }
         }
 
-        @SuppressWarnings("all") //Complaints about simlify and a null check that its already checked..
         @Override
-        public boolean equals(Object obj) {
-            if (call == null) {
+        public void run() {
+            pending.set(false);
+            long current = read;
+            reported = current;
+            long bytesRead = offset + current;
+
+            //Read after the call, so if it completed meanwhile the waiters it had are here
+            List<Streamer> waiters = call.getWaiters();
+            List<Streamer> last = finished;
+            if (last != null) {
+                waiters = last;
+            }
+
+            for (Streamer waiter : waiters) {
+                if (waiter.progressCallback != null && !waiter.isCanceled()) {
+                    waiter.progressCallback.onProgress(bytesRead, contentLength);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Source that counts the bytes read from the network while they are written to the cache
+     */
+    static class ProgressSource extends ForwardingSource {
+
+        private final @NonNull ProgressRunnable progress;
+        private long read;
+
+        ProgressSource(@NonNull Source delegate, @NonNull ProgressRunnable progress) {
+            super(delegate);
+            this.progress = progress;
+            this.read = 0;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long count = super.read(sink, byteCount);
+
+            if (count > 0) {
+                read += count;
+                progress.update(read);
+            } else if (count == -1) {
+                progress.finish();
+            }
+
+            return count;
+        }
+
+    }
+
+    /**
+     * A call in flight for a resource, with all the streamers waiting for it.
+     * Once no one waits for it, its canceled.
+     */
+    static class Call {
+
+        private @NonNull String key;
+        private @NonNull List<Streamer> waiters;
+        private boolean completed;
+        private int attempts;
+
+        //If any waiter listens to the progress, so its not posted for nothing
+        private volatile boolean progressCallbacks;
+
+        private @Nullable Runnable task;
+        private @Nullable okhttp3.Call networkCall;
+
+        Call(@NonNull String key, @NonNull Streamer waiter) {
+            this.key = key;
+            this.waiters = new ArrayList<>();
+            this.waiters.add(waiter);
+            this.progressCallbacks = waiter.progressCallback != null;
+            this.completed = false;
+            this.attempts = 0;
+            this.task = null;
+            this.networkCall = null;
+        }
+
+        /**
+         * Add a waiter to the call
+         * @param waiter streamer waiting for the resource
+         * @return true if it was added, false if the call already completed
+         */
+        synchronized boolean add(@NonNull Streamer waiter) {
+            if (completed) {
                 return false;
             }
 
-            if (obj instanceof Call) {
-                if (((Call) obj).call != null) {
-                    return call.request().url().equals(((Call) obj).call.request().url());
+            waiters.add(waiter);
+            if (waiter.progressCallback != null) {
+                progressCallbacks = true;
+            }
+            return true;
+        }
+
+        /**
+         * Check if any waiter listens to the progress
+         * @return true if the progress should be posted
+         */
+        boolean hasProgressCallbacks() {
+            return progressCallbacks;
+        }
+
+        /**
+         * Get the current waiters of the call
+         * @return copy of the waiters
+         */
+        synchronized @NonNull List<Streamer> getWaiters() {
+            return new ArrayList<>(waiters);
+        }
+
+        /**
+         * Schedule the download of the call
+         * @param scheduler that admits the downloads
+         * @param priority of the download
+         * @param runnable that starts the download
+         */
+        void schedule(@NonNull Scheduler scheduler, @NonNull Priority priority, @NonNull Runnable runnable) {
+            synchronized (this) {
+                if (completed) {
+                    return;
                 }
+
+                task = runnable;
+                //A previous attempt might have failed, its not running anymore
+                networkCall = null;
             }
 
-            if (obj instanceof okhttp3.Call) {
-                return call.request().url().equals(((okhttp3.Call) obj).request().url());
+            scheduler.schedule(key, priority, runnable);
+        }
+
+        /**
+         * Attach the network call performing the download
+         * @param networkCall performing the download
+         * @return false if everyone stopped waiting for it, so it shouldnt be performed
+         */
+        synchronized boolean start(@NonNull okhttp3.Call networkCall) {
+            if (completed) {
+                return false;
             }
 
-            return false;
+            this.networkCall = networkCall;
+            attempts++;
+            return true;
+        }
+
+        /**
+         * Getter
+         * @return amount of attempts started
+         */
+        synchronized int getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * Remove a waiter from the call. If it was the last one, the call is canceled: it wont be
+         * started if its pending, or its network call is canceled if its running.
+         *
+         * @param waiter that stopped waiting
+         * @param scheduler where the call was scheduled
+         */
+        void remove(@NonNull Streamer waiter, @NonNull Scheduler scheduler) {
+            Runnable pendingTask;
+            okhttp3.Call runningCall;
+
+            synchronized (this) {
+                if (!waiters.remove(waiter) || !waiters.isEmpty() || completed) {
+                    return;
+                }
+
+                completed = true;
+                getCurrentCalls().remove(key, this);
+
+                pendingTask = task;
+                runningCall = networkCall;
+            }
+
+            if (runningCall != null) {
+                runningCall.cancel();
+            } else if (pendingTask != null) {
+                scheduler.cancel(key, pendingTask);
+            }
         }
 
-        public @NonNull List<FileCallback> getCallbacks() {
-            return callbacks;
+        /**
+         * Complete the call, removing it from the in flight ones. No more waiters can join it.
+         * @return all the waiters
+         */
+        synchronized @NonNull List<Streamer> complete() {
+            completed = true;
+            getCurrentCalls().remove(key, this);
+
+            List<Streamer> result = waiters;
+            // To avoid possible mem leaks
+            waiters = Collections.emptyList();
+            return result;
         }
 
     }
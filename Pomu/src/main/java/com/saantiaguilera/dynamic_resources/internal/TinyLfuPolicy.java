@@ -0,0 +1,311 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * W-TinyLFU policy. New entries land in a small LRU window. When the window overflows, its eldest entry
+ * is a candidate to enter the main space (a segmented LRU, where entries hit again are protected).
+ * If theres no room for it, the TinyLFU admission filter compares how often the candidate and the main
+ * victim were used recently, and only the most popular one stays.
+ *
+ * Frequencies are estimated with a small count-min sketch that also remembers entries that were already
+ * evicted, and is halved periodically so old popularity fades. This way a burst of one-off downloads
+ * only goes through the window, without flushing the entries used all the time.
+ *
+ * If users want to still use this, but change the size of the window, they can supply this class
+ * using the int constructor
+ */
+public class TinyLfuPolicy implements EvictionPolicy {
+
+    //Default percentage of the cache used by the window
+    private static final int DEFAULT_WINDOW_PERCENT = 1;
+
+    //Percentage of the main space protected from the entries hit only once
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final int windowPercent;
+
+    private long windowMaxSize;
+    private long mainMaxSize;
+    private long protectedMaxSize;
+
+    /**
+     * Segments, all of them in access order. Sizes are in bytes
+     */
+    private final @NonNull LinkedHashMap<String, Long> window;
+    private final @NonNull LinkedHashMap<String, Long> probation;
+    private final @NonNull LinkedHashMap<String, Long> protectedSegment;
+    private long windowSize;
+    private long probationSize;
+    private long protectedSize;
+
+    private final @NonNull FrequencySketch sketch;
+
+    /**
+     * Default constructor, with a window of 1% of the cache
+     */
+    public TinyLfuPolicy() {
+        this(DEFAULT_WINDOW_PERCENT);
+    }
+
+    /**
+     * Constructor with a custom window
+     * @param windowPercent percentage of the cache used by the window, from 1 to 99. Bigger windows
+     *                      favor recency, smaller ones frequency
+     */
+    public TinyLfuPolicy(int windowPercent) {
+        if (windowPercent < 1 || windowPercent > 99) {
+            throw new IllegalArgumentException("Window percent must be between 1 and 99, was " + windowPercent);
+        }
+
+        this.windowPercent = windowPercent;
+        this.window = new LinkedHashMap<>(16, 0.75f, true);
+        this.probation = new LinkedHashMap<>(16, 0.75f, true);
+        this.protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+        this.sketch = new FrequencySketch();
+    }
+
+    @Override
+    public void setMaxSize(long maxSize) {
+        this.windowMaxSize = maxSize * windowPercent / 100;
+        this.mainMaxSize = maxSize - windowMaxSize;
+        this.protectedMaxSize = mainMaxSize * PROTECTED_PERCENT / 100;
+    }
+
+    @Override
+    public void onAdd(@NonNull String key, long size) {
+        if (contains(key)) {
+            onAccess(key, size);
+            return;
+        }
+
+        sketch.increment(key);
+        window.put(key, size);
+        windowSize += size;
+    }
+
+    @Override
+    public void onAccess(@NonNull String key, long size) {
+        sketch.increment(key);
+
+        Long previous;
+        if ((previous = window.get(key)) != null) {
+            window.put(key, size);
+            windowSize += size - previous;
+        } else if ((previous = protectedSegment.get(key)) != null) {
+            protectedSegment.put(key, size);
+            protectedSize += size - previous;
+        } else if ((previous = probation.remove(key)) != null) {
+            //Hit again, promote it
+            probationSize -= previous;
+            protectedSegment.put(key, size);
+            protectedSize += size;
+            demote();
+        } else {
+            window.put(key, size);
+            windowSize += size;
+        }
+    }
+
+    @Override
+    public void onRemove(@NonNull String key) {
+        Long size;
+        if ((size = window.remove(key)) != null) {
+            windowSize -= size;
+        } else if ((size = probation.remove(key)) != null) {
+            probationSize -= size;
+        } else if ((size = protectedSegment.remove(key)) != null) {
+            protectedSize -= size;
+        }
+    }
+
+    @Override
+    public @Nullable String victim() {
+        //Move the overflow of the window to the main space, while theres room or the candidate wins
+        while (windowSize > windowMaxSize && !window.isEmpty()) {
+            Map.Entry<String, Long> candidate = window.entrySet().iterator().next();
+            String mainVictim = eldest(probation, protectedSegment);
+
+            boolean room = probationSize + protectedSize + candidate.getValue() <= mainMaxSize;
+            if (!room && mainVictim != null && sketch.frequency(candidate.getKey()) <= sketch.frequency(mainVictim)) {
+                //The main victim is more popular, the candidate isnt admitted
+                return candidate.getKey();
+            }
+
+            window.remove(candidate.getKey());
+            windowSize -= candidate.getValue();
+            probation.put(candidate.getKey(), candidate.getValue());
+            probationSize += candidate.getValue();
+
+            if (!room) {
+                //The candidate won, make room for it
+                return mainVictim;
+            }
+        }
+
+        String victim = eldest(probation, protectedSegment);
+        return victim != null ? victim : eldest(window, null);
+    }
+
+    @Override
+    public void clear() {
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+        windowSize = 0;
+        probationSize = 0;
+        protectedSize = 0;
+        sketch.clear();
+    }
+
+    /**
+     * Check if an entry is tracked
+     * @param key of the entry
+     * @return true if its in any segment
+     */
+    private boolean contains(@NonNull String key) {
+        return window.containsKey(key) || probation.containsKey(key) || protectedSegment.containsKey(key);
+    }
+
+    /**
+     * Move the eldest protected entries back to probation while it overflows
+     */
+    private void demote() {
+        Iterator<Map.Entry<String, Long>> eldest = protectedSegment.entrySet().iterator();
+
+        while (protectedSize > protectedMaxSize && protectedSegment.size() > 1 && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            eldest.remove();
+            protectedSize -= entry.getValue();
+            probation.put(entry.getKey(), entry.getValue());
+            probationSize += entry.getValue();
+        }
+    }
+
+    /**
+     * Get the eldest key of the first non empty segment
+     * @param first segment
+     * @param second segment, if any
+     * @return key or null if both are empty
+     */
+    private static @Nullable String eldest(@NonNull LinkedHashMap<String, Long> first,
+                                           @Nullable LinkedHashMap<String, Long> second) {
+        if (!first.isEmpty()) {
+            return first.keySet().iterator().next();
+        }
+
+        if (second != null && !second.isEmpty()) {
+            return second.keySet().iterator().next();
+        }
+
+        return null;
+    }
+
+    /**
+     * Count-min sketch of 4 bit counters, to estimate how often a key was used. Once enough keys are
+     * counted, all the counters are halved so the estimation favors the recent usage.
+     */
+    static final class FrequencySketch {
+
+        private static final int DEPTH = 4;
+        private static final int WIDTH = 1 << 12;
+        private static final int MAX_COUNT = 15;
+
+        //Increments after which the counters are halved
+        private static final int SAMPLE_SIZE = 10 * WIDTH;
+
+        //Seeds of the hash of each row
+        private static final int[] SEEDS = { 0x97cb3127, 0xb3c3d8a9, 0x6b2fa91d, 0xc2b2ae35 };
+
+        private final @NonNull byte[][] table;
+        private int increments;
+
+        FrequencySketch() {
+            this.table = new byte[DEPTH][WIDTH];
+            this.increments = 0;
+        }
+
+        /**
+         * Count a usage of a key
+         * @param key used
+         */
+        void increment(@NonNull String key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+
+            for (int row = 0; row < DEPTH; row++) {
+                int index = index(hash, row);
+                if (table[row][index] < MAX_COUNT) {
+                    table[row][index]++;
+                    added = true;
+                }
+            }
+
+            if (added && ++increments >= SAMPLE_SIZE) {
+                reset();
+            }
+        }
+
+        /**
+         * Estimate how often a key was used
+         * @param key to estimate
+         * @return estimated usages, from 0 to 15
+         */
+        int frequency(@NonNull String key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, table[row][index(hash, row)]);
+            }
+
+            return frequency;
+        }
+
+        /**
+         * Forget all the usages
+         */
+        void clear() {
+            for (byte[] row : table) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = 0;
+                }
+            }
+
+            increments = 0;
+        }
+
+        /**
+         * Halve all the counters, so old usages fade
+         */
+        private void reset() {
+            for (byte[] row : table) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = (byte) (row[i] >> 1);
+                }
+            }
+
+            increments /= 2;
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            return hash;
+        }
+
+        private static int index(int hash, int row) {
+            int h = (hash + SEEDS[row]) * SEEDS[row];
+            h ^= h >>> 17;
+            return h & (WIDTH - 1);
+        }
+
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.saantiaguilera.dynamic_resources.internal.loading;
+
+/**
+ * Class developers should use to receive the aggregated state of a batch of requests.
+ * Its called in the main thread.
+ */
+public interface BatchCallback {
+
+    /**
+     * Called each time a request of the batch finishes
+     * @param succeeded requests so far
+     * @param failed requests so far
+     * @param total requests in the batch
+     * @param bytes of the resources fetched so far
+     */
+    void onProgress(int succeeded, int failed, int total, long bytes);
+
+    /**
+     * Called once all the requests of the batch finished. If the batch is canceled its not called
+     * @param succeeded requests
+     * @param failed requests
+     * @param bytes of the resources fetched
+     */
+    void onComplete(int succeeded, int failed, long bytes);
+
+}
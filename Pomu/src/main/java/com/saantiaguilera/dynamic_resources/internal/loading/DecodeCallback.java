@@ -0,0 +1,23 @@
+package com.saantiaguilera.dynamic_resources.internal.loading;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+
+/**
+ * Internal class for callbacks of the decoding of a cached file
+ */
+public interface DecodeCallback {
+
+    /**
+     * When the file was decoded successfully
+     * @param bitmap decoded for the target
+     */
+    void onSuccess(@NonNull Bitmap bitmap);
+
+    /**
+     * When the file couldnt be decoded
+     * @param e exception thrown
+     */
+    void onFailure(@NonNull Exception e);
+
+}
@@ -0,0 +1,16 @@
+package com.saantiaguilera.dynamic_resources.internal.loading;
+
+/**
+ * Internal class for callbacks of the progress of a download. Updates are throttled and posted
+ * to the main thread, so its not called for every chunk read.
+ */
+public interface ProgressCallback {
+
+    /**
+     * When more bytes of the resource were downloaded
+     * @param bytesRead of the resource so far (including the ones of a resumed download)
+     * @param contentLength of the whole resource, or -1 if unknown
+     */
+    void onProgress(long bytesRead, long contentLength);
+
+}
@@ -0,0 +1,20 @@
+package com.saantiaguilera.dynamic_resources.internal.loading;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+
+/**
+ * Internal class for callbacks of the background refresh of a resource that was served stale.
+ * Its only called if the resource changed. Resources without validators (ETag or Last-Modified) are
+ * downloaded again as a whole, so for them its called every time they are refreshed.
+ */
+public interface UpdateCallback {
+
+    /**
+     * When the refreshed resource was different from the one served
+     * @param file where the new version of the resource resides
+     */
+    void onUpdate(@NonNull File file);
+
+}
@@ -0,0 +1,231 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import com.saantiaguilera.dynamic_resources.core.Configurations;
+import com.saantiaguilera.dynamic_resources.internal.loading.BatchCallback;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class BatchTest {
+
+    private static final long TIMEOUT_MILLIS = 30000;
+
+    private static final String BODY = "resource body";
+
+    private Context context;
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        context = RuntimeEnvironment.application;
+        TestCaches.wipe(context);
+
+        server = new MockWebServer();
+        server.start();
+
+        Pipeline.getInstance().setConfigurations(Configurations.create(context)
+                .cache(new DiskCache(context, Long.MAX_VALUE, DiskCache.Durability.NONE))
+                .build());
+        TestCaches.awaitBackground();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        TestCaches.wipe(context);
+    }
+
+    @Test
+    public void emptyBatchCompletesRightAway() {
+        Recorder recorder = new Recorder();
+
+        fetch(Collections.<Uri>emptyList(), 4, recorder);
+
+        assertTrue(recorder.progress.isEmpty());
+        assertEquals("0/0/0", recorder.complete);
+    }
+
+    @Test
+    public void progressCountsTheSuccessesFailuresAndBytes() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().contains("missing")) {
+                    return new MockResponse().setResponseCode(404);
+                }
+                return new MockResponse().setBody(BODY);
+            }
+        });
+        Recorder recorder = new Recorder();
+
+        fetch(uris("first", "missing", "second"), 1, recorder);
+        recorder.await();
+
+        assertEquals(3, recorder.progress.size());
+        assertEquals("1/0/3/" + BODY.length(), recorder.progress.get(0));
+        assertEquals("1/1/3/" + BODY.length(), recorder.progress.get(1));
+        assertEquals("2/1/3/" + 2 * BODY.length(), recorder.progress.get(2));
+        assertEquals("2/1/" + 2 * BODY.length(), recorder.complete);
+    }
+
+    @Test
+    public void neverFetchesMoreThanItsParallelism() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int current = inFlight.incrementAndGet();
+                while (true) {
+                    int max = maxInFlight.get();
+                    if (current <= max || maxInFlight.compareAndSet(max, current)) {
+                        break;
+                    }
+                }
+
+                //Hold it, so the ones allowed to run at the same time overlap
+                Thread.sleep(50);
+                inFlight.decrementAndGet();
+                return new MockResponse().setBody(BODY);
+            }
+        });
+        Recorder recorder = new Recorder();
+
+        fetch(uris("1", "2", "3", "4", "5", "6", "7", "8"), 2, recorder);
+        recorder.await();
+
+        assertEquals("8/0/" + 8 * BODY.length(), recorder.complete);
+        assertEquals(8, server.getRequestCount());
+        assertTrue("Fetched " + maxInFlight.get() + " at the same time", maxInFlight.get() <= 2);
+    }
+
+    @Test
+    public void cancelingFromTheProgressStartsNoMoreRequests() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody(BODY);
+            }
+        });
+        final List<Cancelable> batch = new ArrayList<>();
+        Recorder recorder = new Recorder() {
+            @Override
+            public void onProgress(int succeeded, int failed, int total, long bytes) {
+                super.onProgress(succeeded, failed, total, bytes);
+                batch.get(0).cancel();
+            }
+        };
+
+        batch.add(fetch(uris("1", "2", "3"), 1, recorder));
+        recorder.awaitProgress(1);
+
+        assertNotNull(server.takeRequest(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        //Give a request started by mistake the chance to reach the server
+        assertNull(server.takeRequest(500, TimeUnit.MILLISECONDS));
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertTrue(batch.get(0).isCanceled());
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, recorder.progress.size());
+        assertNull(recorder.complete);
+    }
+
+    private Cancelable fetch(@NonNull List<Uri> uris, int parallelism, @NonNull BatchCallback callback) {
+        return Pipeline.getInstance().fetch(new BatchRequest.Builder()
+                .uris(uris)
+                .parallelism(parallelism)
+                .callback(callback)
+                .build());
+    }
+
+    private List<Uri> uris(String... names) {
+        List<Uri> uris = new ArrayList<>();
+        for (String name : names) {
+            uris.add(Uri.parse(server.url("/" + name + ".png").toString()));
+        }
+        return uris;
+    }
+
+    /**
+     * Callback that records the progress and completion of a batch, which are delivered in the main thread
+     */
+    private static class Recorder implements BatchCallback {
+
+        final List<String> progress = new ArrayList<>();
+        String complete;
+
+        @Override
+        public void onProgress(int succeeded, int failed, int total, long bytes) {
+            progress.add(succeeded + "/" + failed + "/" + total + "/" + bytes);
+        }
+
+        @Override
+        public void onComplete(int succeeded, int failed, long bytes) {
+            complete = succeeded + "/" + failed + "/" + bytes;
+        }
+
+        /**
+         * Run the main thread until the batch completes
+         */
+        void await() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+            while (complete == null) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("The batch didnt complete, progress was " + progress);
+                }
+
+                ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+                Thread.sleep(5);
+            }
+        }
+
+        /**
+         * Run the main thread until the given amount of requests finished
+         * @param finished requests expected
+         */
+        void awaitProgress(int finished) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+            while (progress.size() < finished) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("Only " + progress.size() + " requests of the batch finished");
+                }
+
+                ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+                Thread.sleep(5);
+            }
+        }
+
+    }
+
+}
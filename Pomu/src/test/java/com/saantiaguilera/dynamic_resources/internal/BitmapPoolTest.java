@@ -0,0 +1,81 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.graphics.Bitmap;
+import android.widget.ImageView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class BitmapPoolTest {
+
+    private static final int SIDE = 100;
+
+    private BitmapPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new BitmapPool(10 * 1024 * 1024);
+    }
+
+    @Test
+    public void rebindingAViewPoolsItsPreviousBitmap() {
+        ImageView view = new ImageView(RuntimeEnvironment.application);
+        Bitmap first = newBitmap();
+
+        pool.bind(view, first);
+        assertEquals(0, pool.getSize());
+
+        pool.bind(view, newBitmap());
+        assertEquals(BitmapPool.getSize(first), pool.getSize());
+        assertSame(first, pool.get(SIDE, SIDE, Bitmap.Config.ARGB_8888, 1));
+    }
+
+    @Test
+    public void bitmapSharedWithTheMemoryCacheIsntPooledWhileCached() {
+        ImageView view = new ImageView(RuntimeEnvironment.application);
+        Bitmap bitmap = newBitmap();
+
+        pool.acquire(bitmap);
+        pool.bind(view, bitmap);
+        pool.bind(view, null);
+        assertEquals(0, pool.getSize());
+
+        pool.release(bitmap);
+        assertEquals(BitmapPool.getSize(bitmap), pool.getSize());
+    }
+
+    @Test
+    public void collectedViewReleasesItsBitmap() throws Exception {
+        Bitmap bitmap = newBitmap();
+        bindToDiscardedView(bitmap);
+
+        //The view is only weakly referenced by the pool, once its collected its bitmap can be reused
+        Bitmap reused = null;
+        for (int attempt = 0; attempt < 50 && reused == null; attempt++) {
+            System.gc();
+            Thread.sleep(20);
+            reused = pool.get(SIDE, SIDE, Bitmap.Config.ARGB_8888, 1);
+        }
+
+        assertSame(bitmap, reused);
+    }
+
+    private void bindToDiscardedView(Bitmap bitmap) {
+        pool.bind(new ImageView(RuntimeEnvironment.application), bitmap);
+        assertEquals(0, pool.getSize());
+    }
+
+    private static Bitmap newBitmap() {
+        return Bitmap.createBitmap(SIDE, SIDE, Bitmap.Config.ARGB_8888);
+    }
+
+}
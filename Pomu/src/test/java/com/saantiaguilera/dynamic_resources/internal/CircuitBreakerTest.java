@@ -0,0 +1,129 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class CircuitBreakerTest {
+
+    private static final String HOST = "host";
+    private static final int THRESHOLD = 3;
+    private static final long OPEN_MILLIS = 1000;
+
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        breaker = new CircuitBreaker(THRESHOLD, OPEN_MILLIS);
+    }
+
+    @Test
+    public void staysClosedBelowTheThreshold() {
+        fail(THRESHOLD - 1);
+
+        assertFalse(breaker.isOpen(HOST));
+        assertTrue(breaker.allow(HOST));
+    }
+
+    @Test
+    public void successResetsTheConsecutiveFailures() {
+        fail(THRESHOLD - 1);
+        breaker.onSuccess(HOST);
+        fail(THRESHOLD - 1);
+
+        assertFalse(breaker.isOpen(HOST));
+    }
+
+    @Test
+    public void opensAtTheThreshold() {
+        fail(THRESHOLD);
+
+        assertTrue(breaker.isOpen(HOST));
+        assertFalse(breaker.allow(HOST));
+        assertTrue(breaker.allow("another host"));
+    }
+
+    @Test
+    public void halfOpensOnceTheOpenTimePasses() {
+        fail(THRESHOLD);
+
+        //The clock is shadowed, this only advances it
+        SystemClock.sleep(OPEN_MILLIS - 1);
+        assertFalse(breaker.allow(HOST));
+
+        SystemClock.sleep(1);
+        assertTrue(breaker.allow(HOST));
+        //Only a single probe is let through
+        assertFalse(breaker.allow(HOST));
+    }
+
+    @Test
+    public void successfulProbeClosesIt() {
+        fail(THRESHOLD);
+        SystemClock.sleep(OPEN_MILLIS);
+        assertTrue(breaker.allow(HOST));
+
+        breaker.onSuccess(HOST);
+
+        assertFalse(breaker.isOpen(HOST));
+        assertTrue(breaker.allow(HOST));
+        assertTrue(breaker.allow(HOST));
+    }
+
+    @Test
+    public void failedProbeOpensItAgain() {
+        fail(THRESHOLD);
+        SystemClock.sleep(OPEN_MILLIS);
+        assertTrue(breaker.allow(HOST));
+
+        breaker.onFailure(HOST);
+
+        assertTrue(breaker.isOpen(HOST));
+        assertFalse(breaker.allow(HOST));
+
+        //The open time starts again from the failed probe
+        SystemClock.sleep(OPEN_MILLIS);
+        assertTrue(breaker.allow(HOST));
+    }
+
+    @Test
+    public void abandonedProbeLetsAnotherOneThrough() {
+        fail(THRESHOLD);
+        SystemClock.sleep(OPEN_MILLIS);
+        assertTrue(breaker.allow(HOST));
+        assertFalse(breaker.allow(HOST));
+
+        breaker.onAbandoned(HOST);
+
+        //Its still open, but it can be probed again
+        assertTrue(breaker.isOpen(HOST));
+        assertTrue(breaker.allow(HOST));
+        assertFalse(breaker.allow(HOST));
+    }
+
+    @Test
+    public void abandoningWithAClosedCircuitKeepsItClosed() {
+        fail(THRESHOLD - 1);
+        breaker.onAbandoned(HOST);
+        breaker.onAbandoned("another host");
+
+        assertFalse(breaker.isOpen(HOST));
+        assertTrue(breaker.allow(HOST));
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.onFailure(HOST);
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Random;
+
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Benchmark of writing a downloaded body into the cache, comparing the current path (Okio segments
+ * written straight into a temp file renamed into place) against the previous one (copying the body
+ * stream through a 1KB buffer) for 10KB, 1MB and 20MB payloads.
+ *
+ * The body is read from a stream, like the network one. Files arent synced, so only the copy is
+ * compared. The throughputs are printed.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class DiskCacheWriteBenchmark {
+
+    private static final int[] PAYLOADS = { 10 * 1024, 1024 * 1024, 20 * 1024 * 1024 };
+
+    //Bytes written per payload, so each size runs for a similar time
+    private static final long BYTES_PER_RUN = 200L * 1024 * 1024;
+    private static final int WARMUP_RUNS = 1;
+
+    //Buffer of the previous write path
+    private static final int LEGACY_BUFFER_SIZE = 1024;
+
+    private Context context;
+    private DiskCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        context = RuntimeEnvironment.application;
+        TestCaches.wipe(context);
+        cache = new DiskCache(context, Long.MAX_VALUE, DiskCache.Durability.NONE);
+        TestCaches.awaitBackground();
+    }
+
+    @After
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    public void tearDown() {
+        TestCaches.wipe(context);
+
+        for (int size : PAYLOADS) {
+            new File(context.getFilesDir(), "legacy-" + size + ".bin").delete();
+        }
+    }
+
+    @Test
+    public void compareWritePaths() throws Exception {
+        for (int size : PAYLOADS) {
+            byte[] payload = new byte[size];
+            new Random(size).nextBytes(payload);
+            int writes = (int) Math.max(1, BYTES_PER_RUN / size);
+
+            double legacy = 0;
+            double current = 0;
+            for (int run = 0; run <= WARMUP_RUNS; run++) {
+                legacy = measureLegacy(payload, writes);
+                current = measureCurrent(payload, writes);
+            }
+
+            System.out.println(String.format(Locale.US,
+                    "%8d bytes x %5d: 1KB buffer copy %8.1f MB/s, segments %8.1f MB/s (%.2fx)",
+                    size, writes, legacy, current, current / legacy));
+        }
+    }
+
+    /**
+     * Write the payload with the current path
+     * @return throughput in MB/s
+     */
+    private double measureCurrent(byte[] payload, int writes) throws Exception {
+        Uri uri = Uri.parse("https://cdn.example.com/payload-" + payload.length + ".bin");
+
+        long start = System.nanoTime();
+        File file = null;
+        for (int i = 0; i < writes; i++) {
+            file = cache.put(uri, Okio.buffer(Okio.source(new ByteArrayInputStream(payload))));
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(payload.length, file.length());
+        return throughput(payload.length, writes, elapsed);
+    }
+
+    /**
+     * Write the payload like the previous path did
+     * @return throughput in MB/s
+     */
+    private double measureLegacy(byte[] payload, int writes) throws Exception {
+        File file = new File(context.getFilesDir(), "legacy-" + payload.length + ".bin");
+
+        long start = System.nanoTime();
+        for (int i = 0; i < writes; i++) {
+            InputStream data = new ByteArrayInputStream(payload);
+            FileOutputStream fos = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[LEGACY_BUFFER_SIZE];
+                int bytesRead;
+                while ((bytesRead = data.read(buffer, 0, buffer.length)) >= 0) {
+                    fos.write(buffer, 0, bytesRead);
+                }
+                fos.flush();
+            } finally {
+                data.close();
+                fos.close();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(payload.length, file.length());
+        return throughput(payload.length, writes, elapsed);
+    }
+
+    private static double throughput(int size, int writes, long nanos) {
+        return (size * (double) writes / (1024 * 1024)) / (nanos / 1e9);
+    }
+
+}
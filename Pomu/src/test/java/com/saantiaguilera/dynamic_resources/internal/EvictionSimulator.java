@@ -0,0 +1,213 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Replays recorded accesses of a DiskCache against eviction policies, to compare how they would
+ * have done with a given max size.
+ *
+ * The accesses are read from copies of the cache journal (dynamic-resources.journal in the files dir).
+ * Since the journal gets compacted, copy it periodically (or before restarting the app) to record a long
+ * trace, and supply the copies in the order they were taken. Every put or access in them is a request
+ * of the resource with its size, the evictions recorded are ignored since they belong to the policy
+ * that was running.
+ *
+ * Its a test helper, it doesnt touch the disk cache.
+ */
+public final class EvictionSimulator {
+
+    private final long maxSize;
+
+    /**
+     * Constructor
+     * @param maxSize in bytes of the simulated cache
+     */
+    public EvictionSimulator(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Replay the journals against a policy
+     * @param journals copies of the journal, in the order they were recorded
+     * @param policy to simulate. It should be a new instance, its state is cleared
+     * @return result of the simulation
+     */
+    @WorkerThread
+    public @NonNull Result replay(@NonNull List<File> journals, @NonNull EvictionPolicy policy) {
+        policy.clear();
+        policy.setMaxSize(maxSize);
+
+        Replay replay = new Replay(policy, maxSize);
+        for (File journal : journals) {
+            Journal.read(journal, replay);
+        }
+
+        return replay.result;
+    }
+
+    /**
+     * Replay the journals against many policies
+     * @param journals copies of the journal, in the order they were recorded
+     * @param policies to simulate
+     * @return results of the simulations, in the same order as the policies
+     */
+    @WorkerThread
+    public @NonNull List<Result> compare(@NonNull List<File> journals, @NonNull EvictionPolicy... policies) {
+        List<Result> results = new ArrayList<>(policies.length);
+
+        for (EvictionPolicy policy : policies) {
+            results.add(replay(journals, policy));
+        }
+
+        return results;
+    }
+
+    /**
+     * Simulated cache fed by the records of the journals
+     */
+    private static final class Replay implements Journal.Visitor {
+
+        private final @NonNull EvictionPolicy policy;
+        private final long maxSize;
+        private final @NonNull Map<String, Long> resident;
+        private long size;
+
+        final @NonNull Result result;
+
+        Replay(@NonNull EvictionPolicy policy, long maxSize) {
+            this.policy = policy;
+            this.maxSize = maxSize;
+            this.resident = new HashMap<>();
+            this.size = 0;
+            this.result = new Result(policy.getClass().getSimpleName());
+        }
+
+        @Override
+        public void onRecord(byte op, long time, long length, @NonNull String name,
+                             @Nullable Metadata metadata, @Nullable Journal.Placement placement) {
+            if (op != Journal.OP_PUT && op != Journal.OP_ACCESS) {
+                return;
+            }
+
+            result.requests++;
+            result.requestedBytes += length;
+
+            Long cached = resident.get(name);
+            if (cached != null) {
+                result.hits++;
+                result.hitBytes += length;
+
+                resident.put(name, length);
+                size += length - cached;
+                policy.onAccess(name, length);
+                return;
+            }
+
+            if (length > maxSize) {
+                //It would never fit
+                return;
+            }
+
+            while (size + length > maxSize) {
+                String victim = policy.victim();
+                if (victim == null) {
+                    break;
+                }
+
+                policy.onRemove(victim);
+                Long evicted = resident.remove(victim);
+                if (evicted != null) {
+                    size -= evicted;
+                    result.evictions++;
+                }
+            }
+
+            resident.put(name, length);
+            size += length;
+            policy.onAdd(name, length);
+        }
+
+    }
+
+    /**
+     * Result of a simulation
+     */
+    public static final class Result {
+
+        private final @NonNull String policy;
+        long requests;
+        long hits;
+        long requestedBytes;
+        long hitBytes;
+        long evictions;
+
+        Result(@NonNull String policy) {
+            this.policy = policy;
+        }
+
+        /**
+         * Getter
+         * @return name of the simulated policy
+         */
+        public @NonNull String getPolicy() {
+            return policy;
+        }
+
+        /**
+         * Getter
+         * @return amount of requests replayed
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * Getter
+         * @return amount of requests served by the cache
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Getter
+         * @return amount of resources evicted
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * Getter
+         * @return fraction of the requests served by the cache
+         */
+        public double getHitRatio() {
+            return requests == 0 ? 0 : hits / (double) requests;
+        }
+
+        /**
+         * Getter
+         * @return fraction of the requested bytes served by the cache, ie. not downloaded
+         */
+        public double getByteHitRatio() {
+            return requestedBytes == 0 ? 0 : hitBytes / (double) requestedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s{requests=%d, hitRatio=%.4f, byteHitRatio=%.4f, evictions=%d}",
+                    policy, requests, getHitRatio(), getByteHitRatio(), evictions);
+        }
+
+    }
+
+}
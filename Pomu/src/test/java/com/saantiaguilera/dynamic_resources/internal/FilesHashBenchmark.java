@@ -0,0 +1,99 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Microbenchmark of deriving the file of a key, comparing the current path (a digest reused by
+ * each thread, hex encoded into a reused buffer, and the dir handle cached) against the previous
+ * one (a new digest per call, encoded through a BigInteger, and the dir checked on the disk).
+ *
+ * The costs are printed, the assertion only catches the current path being slower.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class FilesHashBenchmark {
+
+    private static final int KEYS = 1000;
+    private static final int WARMUP_CALLS = 100000;
+    private static final int CALLS = 500000;
+
+    //Dir of the previous path, its the same one
+    private static final String LEGACY_DIR = "dynamic-resources";
+
+    //Keeps the results alive, so the calls cant be optimized away
+    private int sink;
+
+    @Test
+    public void compareKeyDerivation() throws Exception {
+        Context context = RuntimeEnvironment.application;
+
+        List<Uri> uris = new ArrayList<>(KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            uris.add(Uri.parse("https://cdn.example.com/resources/" + i + ".png"));
+        }
+
+        measureLegacy(context, uris, WARMUP_CALLS);
+        measureCurrent(context, uris, WARMUP_CALLS);
+
+        double legacy = measureLegacy(context, uris, CALLS);
+        double current = measureCurrent(context, uris, CALLS);
+
+        System.out.println(String.format(Locale.US,
+                "Key to file: digest per call %6.0f ns, reused digest %6.0f ns (%.2fx)",
+                legacy, current, legacy / current));
+
+        assertTrue("Current path took " + current + " ns, previous " + legacy + " ns", current < legacy);
+    }
+
+    /**
+     * Derive the files with the current path
+     * @return nanoseconds per call
+     */
+    private double measureCurrent(Context context, List<Uri> uris, int calls) {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            sink += Files.create(context, uris.get(i % uris.size()), Files.DEFAULT_DEPTH).getPath().length();
+        }
+        return (System.nanoTime() - start) / (double) calls;
+    }
+
+    /**
+     * Derive the files like the previous path did
+     * @return nanoseconds per call
+     */
+    private double measureLegacy(Context context, List<Uri> uris, int calls) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            Uri uri = uris.get(i % uris.size());
+
+            File dir = new File(context.getFilesDir(), LEGACY_DIR);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IllegalStateException("Couldnt create " + dir);
+            }
+
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            digest.update(uri.toString().getBytes());
+            String hash = new BigInteger(1, digest.digest()).toString(16);
+
+            sink += new File(dir, hash + Files.getExtension(uri)).getPath().length();
+        }
+        return (System.nanoTime() - start) / (double) calls;
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class FilesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void hashKeepsItsLeadingZeros() {
+        //MD5 of "a" is 0cc175b9c0f1b6a831c399e269772661
+        File file = Files.create(context, Uri.parse("a"), 0);
+
+        assertEquals("0cc175b9c0f1b6a831c399e269772661.jpg", file.getName());
+        assertEquals(Files.createDir(context), file.getParentFile());
+    }
+
+    @Test
+    public void dirFollowsTheFilesDirOfTheContext() throws Exception {
+        final File otherFilesDir = folder.newFolder("other");
+        Context other = new ContextWrapper(context) {
+            @Override
+            public File getFilesDir() {
+                return otherFilesDir;
+            }
+        };
+
+        File dir = Files.createDir(context);
+        File otherDir = Files.createDir(other);
+
+        assertEquals(otherFilesDir, otherDir.getParentFile());
+        assertTrue(otherDir.isDirectory());
+        assertEquals(dir, Files.createDir(context));
+        assertEquals(context.getFilesDir(), dir.getParentFile());
+    }
+
+    @Test
+    public void hashIsTheSameInEveryThread() throws Exception {
+        final Uri uri = Uri.parse("https://cdn.example.com/resources/image.png");
+        final String expected = Files.create(context, uri, 0).getName();
+        final AtomicReference<String> mismatch = new AtomicReference<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        String name = Files.create(context, Uri.parse(uri.toString() + "?" + j), 0).getName();
+                        String same = Files.create(context, uri, 0).getName();
+                        if (!expected.equals(same) || name.length() != expected.length()) {
+                            mismatch.set(same + " " + name);
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(mismatch.get());
+    }
+
+    @Test
+    public void resolveSpreadsTheNameInSubdirs() {
+        File dir = new File("root");
+
+        assertEquals(new File("root/abcdef.jpg"), Files.resolve(dir, "abcdef.jpg", 0));
+        assertEquals(new File("root/ab/abcdef.jpg"), Files.resolve(dir, "abcdef.jpg", 1));
+        assertEquals(new File("root/ab/cd/abcdef.jpg"), Files.resolve(dir, "abcdef.jpg", 2));
+        assertEquals(new File("root/a"), Files.resolve(dir, "a", 1));
+    }
+
+    @Test
+    public void normalizePadsShortHashes() {
+        assertEquals("00000000000000000000000000000abc.png", Files.normalize("abc.png"));
+        assertEquals("00000000000000000000000000000abc.png.tmp", Files.normalize("abc.png.tmp"));
+        assertEquals("0cc175b9c0f1b6a831c399e269772661.jpg",
+                Files.normalize("0cc175b9c0f1b6a831c399e269772661.jpg"));
+    }
+
+    @Test
+    public void normalizeLeavesWhatIsntAHash() {
+        assertEquals("face", Files.normalize("face"));
+        assertEquals("foo.png", Files.normalize("foo.png"));
+        assertEquals(".png", Files.normalize(".png"));
+    }
+
+    @Test
+    public void extensionIsTakenFromTheLastPathSegment() {
+        assertEquals(".png", Files.getExtension(Uri.parse("https://cdn.example.com/a/b.png")));
+        assertEquals(".webp", Files.getExtension(Uri.parse("https://cdn.example.com/a/b.webp?v=1.2")));
+        assertEquals(".png", Files.getExtension(Uri.parse("https://cdn.example.com/a/b.png#c.d")));
+    }
+
+    @Test
+    public void extensionDefaultsIfTheresNone() {
+        assertEquals(".jpg", Files.getExtension(Uri.parse("https://cdn.example.com")));
+        assertEquals(".jpg", Files.getExtension(Uri.parse("https://cdn.example.com/resources/1")));
+        assertEquals(".jpg", Files.getExtension(Uri.parse("https://cdn.example.com/v1.0/image")));
+        assertEquals(".jpg", Files.getExtension(Uri.parse("https://cdn.example.com/image.")));
+        assertEquals(".jpg", Files.getExtension(Uri.parse("https://cdn.example.com/image.superlongext")));
+        assertEquals(".jpg", Files.getExtension(Uri.parse("https://cdn.example.com/image.p%2Fg")));
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class GreedyDualSizePolicyTest {
+
+    private GreedyDualSizePolicy policy;
+
+    @Before
+    public void setUp() {
+        policy = new GreedyDualSizePolicy();
+        policy.setMaxSize(100000);
+    }
+
+    @Test
+    public void emptyPolicyHasNoVictim() {
+        assertNull(policy.victim());
+    }
+
+    @Test
+    public void bigEntriesAreEvictedBeforeSmallOnes() {
+        policy.onAdd("small", 10);
+        policy.onAdd("big", 1000);
+
+        assertEquals("big", policy.victim());
+    }
+
+    @Test
+    public void entriesUsedMoreOftenAreEvictedLater() {
+        policy.onAdd("a", 100);
+        policy.onAdd("b", 100);
+        policy.onAccess("a", 100);
+
+        assertEquals("b", policy.victim());
+    }
+
+    @Test
+    public void tiesAreBrokenByRecency() {
+        policy.onAdd("a", 100);
+        policy.onAdd("b", 100);
+
+        assertEquals("a", policy.victim());
+    }
+
+    @Test
+    public void unusedSmallEntriesAgeUntilTheyAreEvicted() {
+        policy.onAdd("small", 1);
+
+        for (int i = 0; i < 200; i++) {
+            policy.onAdd("big" + i, 100);
+
+            String victim = policy.victim();
+            if ("small".equals(victim)) {
+                return;
+            }
+
+            assertEquals("big" + i, victim);
+            policy.onRemove(victim);
+        }
+
+        fail("The small entry never aged");
+    }
+
+    @Test
+    public void removingAnUnknownEntryIsIgnored() {
+        policy.onAdd("a", 10);
+        policy.onRemove("b");
+
+        assertEquals("a", policy.victim());
+    }
+
+    @Test
+    public void clearForgetsAllTheEntries() {
+        policy.onAdd("a", 10);
+        policy.onAdd("b", 10);
+        policy.clear();
+
+        assertNull(policy.victim());
+    }
+
+}
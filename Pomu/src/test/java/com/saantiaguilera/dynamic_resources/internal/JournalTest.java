@@ -0,0 +1,191 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "journal");
+    }
+
+    @Test
+    public void replayFoldsTheRecordsIntoTheLiveEntries() {
+        Journal journal = new Journal(file);
+        journal.append(Journal.OP_PUT, "a/a.png", 1, 10);
+        journal.append(Journal.OP_PUT, "b/b.png", 2, 20);
+        journal.append(Journal.OP_ACCESS, "a/a.png", 3, 10);
+        journal.append(Journal.OP_REMOVE, "b/b.png", 4, 20);
+        journal.appendMetadata("a/a.png", 10, new Metadata("\"v1\"", null, 5, 6));
+        journal.appendPlacement("a/a.png", 10, new Journal.Placement("avatars", true));
+
+        Map<String, Journal.Entry> entries = new Journal(file).replay();
+
+        assertEquals(1, entries.size());
+        Journal.Entry entry = entries.get("a/a.png");
+        assertEquals(3, entry.time);
+        assertEquals(10, entry.size);
+        assertEquals("\"v1\"", entry.metadata.getEtag());
+        assertNull(entry.metadata.getLastModified());
+        assertEquals(6, entry.metadata.getExpiresAt());
+        assertEquals("avatars", entry.placement.partition);
+        assertTrue(entry.placement.pinned);
+    }
+
+    @Test
+    public void newVersionOfAFileKeepsItsMetadataAndPlacement() {
+        Journal journal = new Journal(file);
+        journal.append(Journal.OP_PUT, "a/a.png", 1, 10);
+        journal.appendMetadata("a/a.png", 10, new Metadata("\"v1\"", null, 0, 0));
+        journal.appendPlacement("a/a.png", 10, new Journal.Placement("avatars", true));
+        journal.append(Journal.OP_PUT, "a/a.png", 2, 30);
+
+        Journal.Entry entry = new Journal(file).replay().get("a/a.png");
+
+        assertEquals(2, entry.time);
+        assertEquals(30, entry.size);
+        assertEquals("\"v1\"", entry.metadata.getEtag());
+        assertEquals("avatars", entry.placement.partition);
+        assertTrue(entry.placement.pinned);
+    }
+
+    @Test
+    public void replayKeepsTheRecordsBeforeATruncatedOne() throws Exception {
+        Journal journal = new Journal(file);
+        journal.append(Journal.OP_PUT, "a/a.png", 1, 10);
+        journal.append(Journal.OP_PUT, "b/b.png", 2, 20);
+
+        //The process died while appending
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true));
+        try {
+            out.writeByte(Journal.OP_PUT);
+            out.writeInt(0);
+        } finally {
+            out.close();
+        }
+
+        Map<String, Journal.Entry> entries = new Journal(file).replay();
+
+        assertEquals(Arrays.asList("a/a.png", "b/b.png"), new ArrayList<>(entries.keySet()));
+    }
+
+    @Test
+    public void journalWithAnotherHeaderIsDiscarded() throws Exception {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(0xcafebabe);
+            out.writeInt(1);
+            out.writeByte(Journal.OP_PUT);
+            out.writeLong(1);
+            out.writeLong(10);
+            out.writeUTF("a/a.png");
+        } finally {
+            out.close();
+        }
+
+        assertTrue(new Journal(file).replay().isEmpty());
+    }
+
+    @Test
+    public void journalOfTheFirstVersionIsStillRead() throws Exception {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(0x504f4d55);
+            out.writeInt(1);
+            out.writeByte(Journal.OP_PUT);
+            out.writeLong(1);
+            out.writeLong(10);
+            out.writeUTF("a/a.png");
+            //It had no placements, anything after an unknown record cant be trusted
+            out.writeByte(Journal.OP_PLACE);
+            out.writeLong(2);
+            out.writeLong(10);
+            out.writeUTF("a/a.png");
+            out.writeUTF("avatars");
+            out.writeBoolean(true);
+        } finally {
+            out.close();
+        }
+
+        Map<String, Journal.Entry> entries = new Journal(file).replay();
+
+        assertEquals(1, entries.size());
+        assertEquals(10, entries.get("a/a.png").size);
+        assertNull(entries.get("a/a.png").placement);
+    }
+
+    @Test
+    public void closedJournalIsntWritten() {
+        Journal journal = new Journal(file);
+        journal.append(Journal.OP_PUT, "a/a.png", 1, 10);
+        journal.close();
+        long length = file.length();
+
+        journal.append(Journal.OP_PUT, "b/b.png", 2, 20);
+        journal.appendPlacement("a/a.png", 10, new Journal.Placement(null, true));
+        journal.compact(journal.replay());
+
+        assertEquals(length, file.length());
+        assertEquals(Arrays.asList("a/a.png"), new ArrayList<>(journal.replay().keySet()));
+    }
+
+    @Test
+    public void compactionLeavesOneRecordPerLiveEntry() {
+        Journal journal = new Journal(file);
+        journal.append(Journal.OP_PUT, "a/a.png", 0, 10);
+        journal.append(Journal.OP_PUT, "b/b.png", 0, 20);
+        journal.appendMetadata("b/b.png", 20, new Metadata(null, "yesterday", 0, 0));
+        for (int i = 1; i <= 2000; i++) {
+            journal.append(Journal.OP_ACCESS, i % 2 == 0 ? "a/a.png" : "b/b.png", i, i % 2 == 0 ? 10 : 20);
+        }
+
+        assertTrue(journal.shouldCompact());
+        long before = file.length();
+
+        Map<String, Journal.Entry> entries = journal.replay();
+        journal.compact(entries);
+
+        assertFalse(journal.shouldCompact());
+        assertTrue(file.length() < before / 100);
+
+        Map<String, Journal.Entry> compacted = new Journal(file).replay();
+        assertEquals(2, compacted.size());
+        assertEquals(2000, compacted.get("a/a.png").time);
+        assertEquals(1999, compacted.get("b/b.png").time);
+        assertEquals("yesterday", compacted.get("b/b.png").metadata.getLastModified());
+    }
+
+    @Test
+    public void appendsContinueAfterCompacting() {
+        Journal journal = new Journal(file);
+        journal.append(Journal.OP_PUT, "a/a.png", 1, 10);
+        journal.compact(journal.replay());
+
+        journal.append(Journal.OP_PUT, "b/b.png", 2, 20);
+
+        Map<String, Journal.Entry> entries = new Journal(file).replay();
+        assertEquals(2, entries.size());
+        assertEquals(20, entries.get("b/b.png").size);
+    }
+
+}
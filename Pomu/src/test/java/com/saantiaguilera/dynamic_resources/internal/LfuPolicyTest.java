@@ -0,0 +1,82 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LfuPolicyTest {
+
+    private LfuPolicy policy;
+
+    @Before
+    public void setUp() {
+        policy = new LfuPolicy();
+        policy.setMaxSize(100);
+    }
+
+    @Test
+    public void emptyPolicyHasNoVictim() {
+        assertNull(policy.victim());
+    }
+
+    @Test
+    public void victimIsTheLeastFrequentlyUsed() {
+        policy.onAdd("a", 10);
+        policy.onAdd("b", 10);
+        policy.onAccess("a", 10);
+        policy.onAccess("a", 10);
+        policy.onAdd("c", 10);
+        policy.onAccess("c", 10);
+
+        assertEquals("b", policy.victim());
+        policy.onRemove("b");
+        assertEquals("c", policy.victim());
+        policy.onRemove("c");
+        assertEquals("a", policy.victim());
+        policy.onRemove("a");
+        assertNull(policy.victim());
+    }
+
+    @Test
+    public void tiesAreBrokenByRecency() {
+        policy.onAdd("a", 10);
+        policy.onAdd("b", 10);
+        policy.onAccess("b", 10);
+        policy.onAccess("a", 10);
+
+        //Both were used twice, but b reached it first
+        assertEquals("b", policy.victim());
+    }
+
+    @Test
+    public void addingAnExistingEntryCountsAsAnAccess() {
+        policy.onAdd("a", 10);
+        policy.onAdd("b", 10);
+        policy.onAdd("a", 20);
+
+        assertEquals("b", policy.victim());
+    }
+
+    @Test
+    public void accessingAnUnknownEntryAddsIt() {
+        policy.onAdd("a", 10);
+        policy.onAccess("a", 10);
+        policy.onAccess("b", 10);
+
+        assertEquals("b", policy.victim());
+    }
+
+    @Test
+    public void clearForgetsAllTheEntries() {
+        policy.onAdd("a", 10);
+        policy.onAccess("a", 10);
+        policy.clear();
+
+        assertNull(policy.victim());
+        policy.onAdd("b", 10);
+        assertEquals("b", policy.victim());
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Microbenchmark of a DiskCache hit (hashing the key, finding the file and touching it in the LRU
+ * index) with caches from 100 to 100k entries. Since the index is an access ordered hashed map and
+ * each touch appends a fixed size journal record, the cost shouldnt grow with the entries.
+ *
+ * The costs are printed, the assertion only catches a cost that grows with the size of the cache.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class LruCounterBenchmark {
+
+    private static final int[] SIZES = { 100, 1000, 10000, 100000 };
+
+    private static final int WARMUP_HITS = 10000;
+    private static final int HITS = 20000;
+
+    //A scan or sort per hit would grow 1000 times from the smallest to the biggest cache. Leave room for noise
+    private static final double MAX_GROWTH = 5;
+
+    @Test
+    public void hitCostStaysFlat() throws Exception {
+        double[] costs = new double[SIZES.length];
+
+        for (int i = 0; i < SIZES.length; i++) {
+            costs[i] = measureHit(SIZES[i]);
+            System.out.println(String.format(Locale.US, "DiskCache hit with %6d entries: %8.0f ns", SIZES[i], costs[i]));
+        }
+
+        double growth = costs[costs.length - 1] / costs[0];
+        assertTrue("Hit cost grew " + growth + " times", growth < MAX_GROWTH);
+    }
+
+    /**
+     * Measure the cost of a hit in a cache with the given entries
+     * @param entries in the cache
+     * @return nanoseconds per hit
+     */
+    private double measureHit(int entries) throws Exception {
+        Context context = RuntimeEnvironment.application;
+        TestCaches.wipe(context);
+
+        List<Uri> uris = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            Uri uri = Uri.parse("https://cdn.example.com/resources/" + i + ".png");
+            TestCaches.createResource(context, uri);
+            uris.add(uri);
+        }
+
+        //The existing files are indexed by the reconciliation, wait for it
+        DiskCache cache = new DiskCache(context, Long.MAX_VALUE, DiskCache.Durability.NONE);
+        TestCaches.awaitBackground();
+
+        Random random = new Random(entries);
+        for (int i = 0; i < WARMUP_HITS; i++) {
+            assertNotNull(cache.get(uris.get(random.nextInt(entries))));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < HITS; i++) {
+            cache.get(uris.get(random.nextInt(entries)));
+        }
+        long elapsed = System.nanoTime() - start;
+
+        TestCaches.wipe(context);
+        return elapsed / (double) HITS;
+    }
+
+}
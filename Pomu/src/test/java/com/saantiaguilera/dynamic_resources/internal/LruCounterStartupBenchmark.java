@@ -0,0 +1,73 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Startup benchmark of a DiskCache with 1k, 10k and 50k entries. It measures how long the
+ * constructor blocks the caller and how long the index takes to be ready in background (replaying
+ * the compacted journal and reconciling it with the dir).
+ *
+ * The costs are printed, the assertion only catches a constructor that does the loading itself.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class LruCounterStartupBenchmark {
+
+    private static final int[] SIZES = { 1000, 10000, 50000 };
+
+    private static final int RUNS = 3;
+
+    //Loading even the smallest index takes longer than this, so its clearly not in the caller
+    private static final long MAX_CONSTRUCTOR_MILLIS = 20;
+
+    @Test
+    public void constructorDoesntWaitForTheIndex() throws Exception {
+        Context context = RuntimeEnvironment.application;
+
+        for (int size : SIZES) {
+            TestCaches.wipe(context);
+            for (int i = 0; i < size; i++) {
+                TestCaches.createResource(context, Uri.parse("https://cdn.example.com/resources/" + i + ".png"));
+            }
+
+            //The first one indexes the dir and writes the journal the next ones start from
+            new DiskCache(context, Long.MAX_VALUE, DiskCache.Durability.NONE);
+            TestCaches.awaitBackground();
+
+            long constructor = Long.MAX_VALUE;
+            long ready = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                new DiskCache(context, Long.MAX_VALUE, DiskCache.Durability.NONE);
+                long constructed = System.nanoTime();
+                TestCaches.awaitBackground();
+                long loaded = System.nanoTime();
+
+                constructor = Math.min(constructor, constructed - start);
+                ready = Math.min(ready, loaded - start);
+            }
+
+            System.out.println(String.format(Locale.US,
+                    "DiskCache with %5d entries: constructor %6.2f ms, index ready in %8.2f ms",
+                    size, constructor / 1e6, ready / 1e6));
+
+            assertTrue("Constructor took " + constructor + " ns with " + size + " entries",
+                    TimeUnit.NANOSECONDS.toMillis(constructor) < MAX_CONSTRUCTOR_MILLIS);
+        }
+
+        TestCaches.wipe(context);
+    }
+
+}
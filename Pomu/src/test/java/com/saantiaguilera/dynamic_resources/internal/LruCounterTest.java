@@ -0,0 +1,221 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.AsyncTask;
+
+import com.saantiaguilera.dynamic_resources.core.Configurations;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class LruCounterTest {
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+        TestCaches.wipe(context);
+    }
+
+    @After
+    public void tearDown() {
+        TestCaches.wipe(context);
+    }
+
+    @Test
+    public void requestsBeforeTheIndexIsLoadedArentBlocked() throws Exception {
+        Uri cached = uri("cached");
+        TestCaches.createResource(context, cached);
+        Uri fresh = uri("fresh");
+
+        //Hold the background executor, so the index cant be loaded meanwhile
+        final CountDownLatch loading = new CountDownLatch(1);
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loading.await(60, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    //Let it load
+                }
+            }
+        });
+
+        DiskCache cache;
+        long start = System.nanoTime();
+        try {
+            cache = new DiskCache(context, Long.MAX_VALUE, DiskCache.Durability.NONE);
+
+            assertNotNull(cache.get(cached));
+            File written = cache.put(fresh, Okio.buffer(Okio.source(new ByteArrayInputStream(new byte[10]))));
+            assertEquals(10, written.length());
+
+            //Its queued until the index is loaded
+            cache.putMetadata(fresh, new Metadata("\"v1\"", null, 0, 0));
+            assertNull(cache.getMetadata(fresh));
+        } finally {
+            loading.countDown();
+        }
+
+        //Waiting for the index would have taken the whole minute
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 10);
+
+        TestCaches.awaitBackground();
+        assertEquals("\"v1\"", cache.getMetadata(fresh).getEtag());
+
+        Map<String, Journal.Entry> journaled = new Journal(Files.createJournal(context)).replay();
+        assertEquals(2, journaled.size());
+        assertEquals(10, journaled.get(key(fresh)).size);
+        assertEquals("\"v1\"", journaled.get(key(fresh)).metadata.getEtag());
+        assertEquals(0, journaled.get(key(cached)).size);
+    }
+
+    @Test
+    public void migrationMovesTheEntriesAndDeletesWhatCantBeMapped() throws Exception {
+        File dir = Files.createDir(context);
+
+        //Flat, as the first versions stored them
+        Uri flat = uri("flat");
+        File flatFile = Files.create(context, flat, 0);
+        Files.createParent(flatFile);
+        assertTrue(flatFile.createNewFile());
+
+        //Without the leading zeros of its hash
+        File shortName = new File(dir, "abc.png");
+        assertTrue(shortName.createNewFile());
+
+        //Nested by an extension taken from the whole uri, eg. "https://cdn.example.com/resources/1"
+        File nested = new File(dir, "0123456789abcdef0123456789abcdef.com/resources/1.png");
+        Files.createParent(nested);
+        assertTrue(nested.createNewFile());
+
+        //Named with the query of the uri, as the first versions did for "https://cdn.example.com/a.png?size=2"
+        File queried = new File(dir, "0123456789abcdef0123456789abcdef.png?size=2");
+        assertTrue(queried.createNewFile());
+
+        //Download that didnt finish, it goes along with its entry
+        File partial = new File(dir, "0123456789abcdef0123456789abcdef.jpg.partial");
+        assertTrue(partial.createNewFile());
+
+        DiskCache cache = new DiskCache(context, Long.MAX_VALUE, DiskCache.Durability.NONE);
+        TestCaches.awaitBackground();
+
+        assertFalse(queried.exists());
+        assertTrue(Files.resolve(dir, partial.getName(), Files.DEFAULT_DEPTH).exists());
+        assertTrue(Files.create(context, flat, Files.DEFAULT_DEPTH).exists());
+        assertNotNull(cache.get(flat));
+        assertTrue(Files.resolve(dir, "00000000000000000000000000000abc.png", Files.DEFAULT_DEPTH).exists());
+
+        assertFalse(nested.exists());
+        assertFalse(new File(dir, "0123456789abcdef0123456789abcdef.com").exists());
+
+        List<File> files = new ArrayList<>();
+        Files.list(dir, files);
+        assertEquals(3, files.size());
+    }
+
+    @Test
+    public void evictedEntriesAreDeleted() throws Exception {
+        DiskCache cache = new DiskCache(context, 25, DiskCache.Durability.NONE);
+        TestCaches.awaitBackground();
+
+        File first = cache.put(uri("first"), Okio.buffer(Okio.source(new ByteArrayInputStream(new byte[10]))));
+        cache.put(uri("second"), Okio.buffer(Okio.source(new ByteArrayInputStream(new byte[10]))));
+        assertTrue(first.exists());
+
+        cache.put(uri("third"), Okio.buffer(Okio.source(new ByteArrayInputStream(new byte[10]))));
+        TestCaches.awaitBackground();
+
+        assertFalse(first.exists());
+        assertNull(cache.get(uri("first")));
+        assertNotNull(cache.get(uri("second")));
+        assertNotNull(cache.get(uri("third")));
+
+        Map<String, Journal.Entry> journaled = new Journal(Files.createJournal(context)).replay();
+        assertEquals(2, journaled.size());
+        assertFalse(journaled.containsKey(key(uri("first"))));
+    }
+
+    @Test
+    public void previousCacheOfTheDirStopsEvictingAndJournaling() throws Exception {
+        DiskCache previous = new DiskCache(context, 15, DiskCache.Durability.NONE);
+        TestCaches.awaitBackground();
+        new DiskCache(context, Long.MAX_VALUE, DiskCache.Durability.NONE);
+        TestCaches.awaitBackground();
+
+        File first = previous.put(uri("first"), Okio.buffer(Okio.source(new ByteArrayInputStream(new byte[10]))));
+        previous.put(uri("second"), Okio.buffer(Okio.source(new ByteArrayInputStream(new byte[10]))));
+        TestCaches.awaitBackground();
+
+        //Its still served, but the current cache decides what to evict
+        assertTrue(first.exists());
+        assertNotNull(previous.get(uri("first")));
+        assertTrue(new Journal(Files.createJournal(context)).replay().isEmpty());
+    }
+
+    @Test
+    public void suppliedCacheIsntRetiredByADefaultOne() throws Exception {
+        DiskCache supplied = new DiskCache(context, 15, DiskCache.Durability.NONE);
+        Configurations configurations = Configurations.create(context)
+                .cache(supplied)
+                .build();
+        TestCaches.awaitBackground();
+
+        assertSame(supplied, configurations.getCache());
+
+        File first = supplied.put(uri("first"), Okio.buffer(Okio.source(new ByteArrayInputStream(new byte[10]))));
+        supplied.put(uri("second"), Okio.buffer(Okio.source(new ByteArrayInputStream(new byte[10]))));
+        TestCaches.awaitBackground();
+
+        assertFalse(first.exists());
+        assertEquals(1, new Journal(Files.createJournal(context)).replay().size());
+    }
+
+    @Test
+    public void defaultCacheIsCreatedWhenNoneIsSupplied() {
+        Configurations configurations = Configurations.create(context).build();
+
+        assertTrue(configurations.getCache() instanceof DiskCache);
+    }
+
+    private static Uri uri(String name) {
+        return Uri.parse("https://cdn.example.com/resources/" + name + ".png");
+    }
+
+    /**
+     * Get the journal key of a resource, its path relative to the dir of the resources
+     * @param uri of the resource
+     * @return key in the journal
+     */
+    private String key(Uri uri) {
+        String path = Files.create(context, uri, Files.DEFAULT_DEPTH).getPath();
+        return path.substring(Files.createDir(context).getPath().length() + 1);
+    }
+
+}
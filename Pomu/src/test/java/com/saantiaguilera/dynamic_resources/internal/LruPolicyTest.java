@@ -0,0 +1,64 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LruPolicyTest {
+
+    private LruPolicy policy;
+
+    @Before
+    public void setUp() {
+        policy = new LruPolicy();
+        policy.setMaxSize(100);
+    }
+
+    @Test
+    public void emptyPolicyHasNoVictim() {
+        assertNull(policy.victim());
+    }
+
+    @Test
+    public void victimIsTheLeastRecentlyUsed() {
+        policy.onAdd("a", 10);
+        policy.onAdd("b", 10);
+        policy.onAdd("c", 10);
+        policy.onAccess("a", 10);
+
+        assertEquals("b", policy.victim());
+        policy.onRemove("b");
+        assertEquals("c", policy.victim());
+        policy.onRemove("c");
+        assertEquals("a", policy.victim());
+    }
+
+    @Test
+    public void victimIsntRemovedUntilOnRemove() {
+        policy.onAdd("a", 10);
+        policy.onAdd("b", 10);
+
+        assertEquals("a", policy.victim());
+        assertEquals("a", policy.victim());
+    }
+
+    @Test
+    public void removingAnUnknownEntryIsIgnored() {
+        policy.onAdd("a", 10);
+        policy.onRemove("b");
+
+        assertEquals("a", policy.victim());
+    }
+
+    @Test
+    public void clearForgetsAllTheEntries() {
+        policy.onAdd("a", 10);
+        policy.onAdd("b", 10);
+        policy.clear();
+
+        assertNull(policy.victim());
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.graphics.Bitmap;
+import android.widget.ImageView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class MemoryCacheTest {
+
+    private static final int SIDE = 100;
+
+    private BitmapPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new BitmapPool(10 * 1024 * 1024);
+    }
+
+    @Test
+    public void cachedBitmapIsPooledOnceEvictedAndNotShown() {
+        MemoryCache cache = newCache(SIDE * SIDE * 4);
+        Bitmap first = newBitmap();
+
+        cache.put("first", first);
+        assertSame(first, cache.get("first"));
+
+        cache.put("second", newBitmap());
+        assertNull(cache.get("first"));
+        assertSame(first, pool.get(SIDE, SIDE, Bitmap.Config.ARGB_8888, 1));
+    }
+
+    @Test
+    public void oversizedBitmapShownInAViewIsntRecycledNorReused() {
+        MemoryCache cache = newCache(SIDE * SIDE * 4 - 1);
+        ImageView view = new ImageView(RuntimeEnvironment.application);
+        Bitmap bitmap = newBitmap();
+
+        pool.bind(view, bitmap);
+        cache.put("oversized", bitmap);
+
+        assertNull(cache.get("oversized"));
+        assertFalse(bitmap.isRecycled());
+        assertEquals(0, pool.getSize());
+        assertNull(pool.get(SIDE, SIDE, Bitmap.Config.ARGB_8888, 1));
+    }
+
+    @Test
+    public void oversizedBitmapIsntCached() {
+        MemoryCache cache = newCache(SIDE * SIDE * 4 - 1);
+        Bitmap bitmap = newBitmap();
+
+        cache.put("oversized", bitmap);
+
+        assertNull(cache.get("oversized"));
+        assertFalse(bitmap.isRecycled());
+        assertEquals(0, pool.getSize());
+    }
+
+    private MemoryCache newCache(int maxSize) {
+        MemoryCache cache = new MemoryCache(maxSize);
+        cache.setPool(pool);
+        return cache;
+    }
+
+    private static Bitmap newBitmap() {
+        return Bitmap.createBitmap(SIDE, SIDE, Bitmap.Config.ARGB_8888);
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class NegativeCacheTest {
+
+    private static final long TTL_MILLIS = 1000;
+
+    private NegativeCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new NegativeCache(2, TTL_MILLIS);
+    }
+
+    @Test
+    public void clientErrorIsKeptUntilItsTtl() {
+        ResponseException missing = notFound("missing");
+        cache.put(missing);
+
+        //The clock is shadowed, this only advances it
+        SystemClock.sleep(TTL_MILLIS - 1);
+        assertSame(missing, cache.get(missing.getUri()));
+
+        SystemClock.sleep(1);
+        assertNull(cache.get(missing.getUri()));
+    }
+
+    @Test
+    public void serverErrorIsntKept() {
+        ResponseException error = new ResponseException(uri("error"), 503, "Service Unavailable");
+        cache.put(error);
+
+        assertNull(cache.get(error.getUri()));
+    }
+
+    @Test
+    public void leastRecentFailureIsDroppedWhenFull() {
+        cache.put(notFound("first"));
+        cache.put(notFound("second"));
+        cache.get(uri("first"));
+        cache.put(notFound("third"));
+
+        assertNotNull(cache.get(uri("first")));
+        assertNull(cache.get(uri("second")));
+        assertNotNull(cache.get(uri("third")));
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        cache.put(notFound("missing"));
+        cache.clear();
+
+        assertNull(cache.get(uri("missing")));
+    }
+
+    private static Uri uri(String name) {
+        return Uri.parse("http://host/" + name + ".png");
+    }
+
+    private static ResponseException notFound(String name) {
+        return new ResponseException(uri(name), 404, "Not Found");
+    }
+
+}
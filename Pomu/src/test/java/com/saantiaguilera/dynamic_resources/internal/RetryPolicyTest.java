@@ -0,0 +1,111 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.net.Uri;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class RetryPolicyTest {
+
+    private static final Uri URI = Uri.parse("http://host/resource.png");
+
+    @Test
+    public void delayGrowsExponentiallyUpToTheMax() {
+        RetryPolicy policy = RetryPolicy.create()
+                .backoff(100, 1000)
+                .multiplier(2)
+                .jitter(0)
+                .build();
+
+        assertEquals(100, policy.getDelay(1));
+        assertEquals(200, policy.getDelay(2));
+        assertEquals(400, policy.getDelay(3));
+        assertEquals(800, policy.getDelay(4));
+        assertEquals(1000, policy.getDelay(5));
+        assertEquals(1000, policy.getDelay(30));
+    }
+
+    @Test
+    public void jitterStaysWithinItsSpread() {
+        RetryPolicy policy = RetryPolicy.create()
+                .backoff(1000, 4000)
+                .multiplier(2)
+                .jitter(0.2)
+                .build();
+
+        Set<Long> first = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.getDelay(1);
+            assertTrue("Delay " + delay + " out of bounds", delay >= 800 && delay <= 1200);
+            first.add(delay);
+
+            //Its spread around the max too, not only below it
+            long capped = policy.getDelay(10);
+            assertTrue("Delay " + capped + " out of bounds", capped >= 3200 && capped <= 4800);
+        }
+
+        //Failures at the same time shouldnt retry all at once
+        assertTrue(first.size() > 1);
+    }
+
+    @Test
+    public void fullJitterNeverGoesNegative() {
+        RetryPolicy policy = RetryPolicy.create()
+                .backoff(10, 10)
+                .jitter(1)
+                .build();
+
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.getDelay(1);
+            assertTrue("Delay " + delay + " out of bounds", delay >= 0 && delay <= 20);
+        }
+    }
+
+    @Test
+    public void retriesUntilTheMaxAttempts() {
+        RetryPolicy policy = RetryPolicy.create().maxAttempts(3).build();
+        IOException exception = new IOException("Connection reset");
+
+        assertTrue(policy.shouldRetry(1, exception));
+        assertTrue(policy.shouldRetry(2, exception));
+        assertFalse(policy.shouldRetry(3, exception));
+        assertFalse(RetryPolicy.none().shouldRetry(1, exception));
+    }
+
+    @Test
+    public void onlyRetryableResponsesAreRetried() {
+        RetryPolicy policy = RetryPolicy.create().build();
+
+        assertTrue(policy.shouldRetry(1, new ResponseException(URI, 503, "Service Unavailable")));
+        assertTrue(policy.shouldRetry(1, new ResponseException(URI, 429, "Too Many Requests")));
+        assertFalse(policy.shouldRetry(1, new ResponseException(URI, 404, "Not Found")));
+        assertFalse(policy.shouldRetry(1, new IllegalStateException("Not an io failure")));
+
+        RetryPolicy custom = RetryPolicy.create().retryableCodes(404).build();
+        assertTrue(custom.shouldRetry(1, new ResponseException(URI, 404, "Not Found")));
+        assertFalse(custom.shouldRetry(1, new ResponseException(URI, 503, "Service Unavailable")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void backoffCantShrink() {
+        RetryPolicy.create().backoff(1000, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void jitterCantExceedTheDelay() {
+        RetryPolicy.create().jitter(1.5);
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SchedulerTest {
+
+    private Scheduler scheduler;
+    private List<String> started;
+
+    @Before
+    public void setUp() {
+        scheduler = new Scheduler(1);
+        started = new ArrayList<>();
+    }
+
+    @Test
+    public void pendingTasksStartInPriorityOrder() {
+        scheduler.schedule("running", Priority.VISIBLE, record("running"));
+        scheduler.schedule("idle", Priority.IDLE, record("idle"));
+        scheduler.schedule("prefetch", Priority.PREFETCH, record("prefetch"));
+        scheduler.schedule("visible", Priority.VISIBLE, record("visible"));
+        scheduler.schedule("another visible", Priority.VISIBLE, record("another visible"));
+
+        finish(4);
+
+        assertEquals(Arrays.asList("running", "visible", "another visible", "prefetch", "idle"), started);
+    }
+
+    @Test
+    public void boostedTaskStartsBeforeTheOthers() {
+        scheduler.schedule("running", Priority.VISIBLE, record("running"));
+        scheduler.schedule("prefetch", Priority.PREFETCH, record("prefetch"));
+        scheduler.schedule("idle", Priority.IDLE, record("idle"));
+
+        scheduler.boost("idle", Priority.IMMEDIATE);
+        finish(2);
+
+        assertEquals(Arrays.asList("running", "idle", "prefetch"), started);
+    }
+
+    @Test
+    public void canceledTaskNeverStarts() {
+        Runnable canceled = record("canceled");
+        scheduler.schedule("running", Priority.VISIBLE, record("running"));
+        scheduler.schedule("canceled", Priority.VISIBLE, canceled);
+        scheduler.schedule("next", Priority.VISIBLE, record("next"));
+
+        scheduler.cancel("canceled", canceled);
+        finish(2);
+
+        assertEquals(Arrays.asList("running", "next"), started);
+    }
+
+    @Test
+    public void tasksThatFinishRightAwayAreDrainedWithoutRecursing() {
+        final int tasks = 100000;
+        final int[] ran = { 0 };
+        Runnable failFast = new Runnable() {
+            @Override
+            public void run() {
+                ran[0]++;
+                scheduler.finish();
+            }
+        };
+
+        scheduler.schedule("running", Priority.VISIBLE, record("running"));
+        for (int i = 0; i < tasks; i++) {
+            scheduler.schedule("task" + i, Priority.PREFETCH, failFast);
+        }
+
+        //Recursing would overflow the stack
+        scheduler.finish();
+
+        assertEquals(tasks, ran[0]);
+
+        //The slot is free again
+        scheduler.schedule("next", Priority.VISIBLE, record("next"));
+        assertTrue(started.contains("next"));
+    }
+
+    private @NonNull Runnable record(@NonNull final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.add(name);
+            }
+        };
+    }
+
+    private void finish(int times) {
+        for (int i = 0; i < times; i++) {
+            scheduler.finish();
+        }
+    }
+
+}
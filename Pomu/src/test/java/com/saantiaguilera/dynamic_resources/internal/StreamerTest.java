@@ -0,0 +1,476 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import com.saantiaguilera.dynamic_resources.internal.loading.FileCallback;
+import com.saantiaguilera.dynamic_resources.internal.loading.ProgressCallback;
+import com.saantiaguilera.dynamic_resources.internal.loading.UpdateCallback;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class StreamerTest {
+
+    private static final long TIMEOUT_MILLIS = 30000;
+
+    private static final String BODY = "resource body";
+    private static final String VALIDATOR = "\"v1\"";
+
+    private Context context;
+    private MockWebServer server;
+    private DiskCache cache;
+    private OkHttpClient client;
+    private ExecutorService writeExecutor;
+    private Scheduler scheduler;
+
+    //Probes the cache in the caller thread, so once fetch() returns the streamer joined its call
+    private final Executor direct = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        context = RuntimeEnvironment.application;
+        TestCaches.wipe(context);
+
+        server = new MockWebServer();
+        server.start();
+
+        cache = new DiskCache(context, Long.MAX_VALUE, DiskCache.Durability.NONE);
+        TestCaches.awaitBackground();
+
+        client = new OkHttpClient();
+        writeExecutor = Executors.newSingleThreadExecutor();
+        scheduler = new Scheduler(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        writeExecutor.shutdown();
+        TestCaches.wipe(context);
+    }
+
+    @Test
+    public void duplicateRequestsShareOneNetworkCall() throws Exception {
+        final int threads = 8;
+        final int requestsPerThread = 125;
+        final Uri uri = Uri.parse(server.url("/duplicated.png").toString());
+
+        //The response waits until every request joined, so none of them can miss the call in flight
+        final CountDownLatch joined = new CountDownLatch(1);
+        server.setDispatcher(new okhttp3.mockwebserver.Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                joined.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                return new MockResponse().setBody(BODY);
+            }
+        });
+
+        final Recorder recorder = new Recorder();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> fetchers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread fetcher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        newStreamer(recorder).fetch(uri);
+                    }
+                }
+            });
+            fetcher.start();
+            fetchers.add(fetcher);
+        }
+
+        start.countDown();
+        for (Thread fetcher : fetchers) {
+            fetcher.join(TIMEOUT_MILLIS);
+        }
+        joined.countDown();
+
+        recorder.await(threads * requestsPerThread);
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals(threads * requestsPerThread, recorder.successes.size());
+        assertTrue(recorder.failures.isEmpty());
+        assertEquals(1, new HashSet<>(recorder.successes).size());
+    }
+
+    @Test
+    public void partialDownloadIsResumedWithARange() throws Exception {
+        Uri uri = Uri.parse(server.url("/resumed.png").toString());
+        writePartial(uri, "resource ");
+
+        server.enqueue(new MockResponse()
+                .setResponseCode(206)
+                .setHeader("ETag", VALIDATOR)
+                .setHeader("Content-Range", "bytes 9-12/13")
+                .setBody("body"));
+
+        Recorder recorder = fetch(uri);
+
+        RecordedRequest request = takeRequest();
+        assertEquals("bytes=9-", request.getHeader("Range"));
+        assertEquals(VALIDATOR, request.getHeader("If-Range"));
+
+        assertTrue(recorder.failures.isEmpty());
+        assertEquals(BODY, read(recorder.successes.get(0)));
+    }
+
+    @Test
+    public void partialDownloadIsDiscardedIfTheResourceChanged() throws Exception {
+        Uri uri = Uri.parse(server.url("/changed.png").toString());
+        writePartial(uri, "resource ");
+
+        //If-Range didnt match, so the server sends the whole new version
+        server.enqueue(new MockResponse()
+                .setHeader("ETag", "\"v2\"")
+                .setBody("another resource"));
+
+        Recorder recorder = fetch(uri);
+
+        RecordedRequest request = takeRequest();
+        assertEquals("bytes=9-", request.getHeader("Range"));
+
+        assertTrue(recorder.failures.isEmpty());
+        assertEquals("another resource", read(recorder.successes.get(0)));
+    }
+
+    @Test
+    public void unsatisfiableRangeRestartsFromZero() throws Exception {
+        Uri uri = Uri.parse(server.url("/unsatisfiable.png").toString());
+        writePartial(uri, "resource body and more");
+
+        server.enqueue(new MockResponse()
+                .setResponseCode(416)
+                .setHeader("Content-Range", "bytes */13"));
+        server.enqueue(new MockResponse()
+                .setHeader("ETag", VALIDATOR)
+                .setBody(BODY));
+
+        Recorder recorder = fetch(uri);
+
+        assertEquals("bytes=22-", takeRequest().getHeader("Range"));
+        RecordedRequest restart = takeRequest();
+        assertNull(restart.getHeader("Range"));
+        assertNull(restart.getHeader("If-Range"));
+
+        assertEquals(2, server.getRequestCount());
+        assertTrue(recorder.failures.isEmpty());
+        assertEquals(BODY, read(recorder.successes.get(0)));
+    }
+
+    @Test
+    public void revalidationOfAnEvictedEntryIsReissuedUnconditionally() throws Exception {
+        final Uri uri = Uri.parse(server.url("/evicted.png").toString());
+        cache.put(uri, Okio.buffer(Okio.source(new ByteArrayInputStream(BODY.getBytes("UTF-8")))));
+        cache.putMetadata(uri, new Metadata(VALIDATOR, null, 0, 0));
+
+        //The entry is evicted while the conditional request is in flight
+        server.setDispatcher(new okhttp3.mockwebserver.Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getHeader("If-None-Match") != null) {
+                    cache.remove(Uri.parse(cache.get(uri).getPath()));
+                    return new MockResponse().setResponseCode(304);
+                }
+                return new MockResponse().setHeader("ETag", VALIDATOR).setBody("refetched");
+            }
+        });
+
+        Recorder recorder = new Recorder();
+        newStreamer(recorder).cachePolicy(CachePolicy.REVALIDATE).fetch(uri);
+        recorder.await(1);
+
+        assertEquals(VALIDATOR, takeRequest().getHeader("If-None-Match"));
+        assertNull(takeRequest().getHeader("If-None-Match"));
+
+        assertEquals(2, server.getRequestCount());
+        assertTrue(recorder.failures.isEmpty());
+        assertEquals("refetched", read(recorder.successes.get(0)));
+    }
+
+    @Test
+    public void staleEntryWithoutValidatorsIsRefreshedUnconditionally() throws Exception {
+        Uri uri = Uri.parse(server.url("/unvalidated.png").toString());
+        cache.put(uri, Okio.buffer(Okio.source(new ByteArrayInputStream(BODY.getBytes("UTF-8")))));
+        cache.putMetadata(uri, new Metadata(null, null, 0, 1));
+        server.enqueue(new MockResponse().setBody("refreshed"));
+
+        final List<File> updates = new ArrayList<>();
+        Recorder recorder = new Recorder();
+        newStreamer(recorder)
+                .cachePolicy(CachePolicy.STALE_WHILE_REVALIDATE)
+                .updateCallback(new UpdateCallback() {
+                    @Override
+                    public void onUpdate(@NonNull File file) {
+                        updates.add(file);
+                    }
+                })
+                .fetch(uri);
+
+        //The stale one is served right away
+        recorder.await(1);
+        assertEquals(BODY, read(recorder.successes.get(0)));
+
+        RecordedRequest request = takeRequest();
+        assertNull(request.getHeader("If-None-Match"));
+        assertNull(request.getHeader("If-Modified-Since"));
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (updates.isEmpty() && System.currentTimeMillis() < deadline) {
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+            Thread.sleep(5);
+        }
+
+        assertEquals(1, updates.size());
+        assertEquals("refreshed", read(updates.get(0)));
+        assertEquals(1, recorder.successes.size());
+    }
+
+    @Test
+    public void freshEntryWithoutValidatorsIsntRefreshed() throws Exception {
+        Uri uri = Uri.parse(server.url("/fresh.png").toString());
+        cache.put(uri, Okio.buffer(Okio.source(new ByteArrayInputStream(BODY.getBytes("UTF-8")))));
+        cache.putMetadata(uri, new Metadata(null, null, 0, Long.MAX_VALUE));
+
+        Recorder recorder = new Recorder();
+        newStreamer(recorder).cachePolicy(CachePolicy.STALE_WHILE_REVALIDATE).fetch(uri);
+        recorder.await(1);
+
+        assertEquals(BODY, read(recorder.successes.get(0)));
+        assertNull(server.takeRequest(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void lastProgressIsPostedBeforeTheSuccess() throws Exception {
+        Uri uri = Uri.parse(server.url("/progress.png").toString());
+
+        //The second half arrives while the first progress is still throttling the updates
+        server.enqueue(new MockResponse()
+                .setBody(new Buffer().write(new byte[2048]))
+                .throttleBody(1024, 50, TimeUnit.MILLISECONDS));
+
+        final List<String> events = new ArrayList<>();
+        final Recorder recorder = new Recorder() {
+            @Override
+            public void onSuccess(@NonNull File file) {
+                events.add("success");
+                super.onSuccess(file);
+            }
+        };
+
+        newStreamer(recorder)
+                .progressCallback(new ProgressCallback() {
+                    @Override
+                    public void onProgress(long bytesRead, long contentLength) {
+                        events.add(bytesRead + "/" + contentLength);
+                    }
+                })
+                .fetch(uri);
+        recorder.await(1);
+
+        assertTrue(recorder.failures.isEmpty());
+        assertEquals("success", events.get(events.size() - 1));
+        assertEquals("2048/2048", events.get(events.size() - 2));
+    }
+
+    @Test
+    public void canceledProbeLetsTheHostBeProbedAgain() throws Exception {
+        Uri uri = Uri.parse(server.url("/probed.png").toString());
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+        breaker.onFailure(uri.getHost());
+        //The clock is shadowed, this only advances it
+        SystemClock.sleep(1000);
+
+        //The probe hangs until its canceled
+        final CountDownLatch released = new CountDownLatch(1);
+        server.setDispatcher(new okhttp3.mockwebserver.Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (request.getRequestLine().contains("probed")) {
+                    released.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                return new MockResponse().setBody(BODY);
+            }
+        });
+
+        Streamer probe = newStreamer(new Recorder()).circuitBreaker(breaker).fetch(uri);
+        takeRequest();
+        probe.cancel();
+        released.countDown();
+        awaitNetworkIdle();
+
+        server.setDispatcher(new okhttp3.mockwebserver.QueueDispatcher());
+        server.enqueue(new MockResponse().setBody(BODY));
+        Recorder recorder = new Recorder();
+        newStreamer(recorder).circuitBreaker(breaker).fetch(uri);
+        recorder.await(1);
+
+        assertTrue(recorder.failures.isEmpty());
+        assertEquals(BODY, read(recorder.successes.get(0)));
+        assertFalse(breaker.isOpen(uri.getHost()));
+    }
+
+    /**
+     * Wait until the client has no call running, so the callbacks of the previous ones returned
+     */
+    private void awaitNetworkIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (client.dispatcher().runningCallsCount() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("The network calls never finished");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Fetch a uri and wait for its result
+     * @param uri to fetch
+     * @return recorder with the result
+     */
+    private Recorder fetch(@NonNull Uri uri) throws InterruptedException {
+        Recorder recorder = new Recorder();
+        newStreamer(recorder).fetch(uri);
+        recorder.await(1);
+        return recorder;
+    }
+
+    /**
+     * Leave a partial download of a uri, as if it was interrupted
+     * @param uri of the resource
+     * @param received bytes that were received before the interruption
+     */
+    private void writePartial(@NonNull Uri uri, @NonNull String received) throws IOException {
+        File target = Files.create(context, uri, Files.DEFAULT_DEPTH);
+        Files.createParent(target);
+
+        Partial partial = Partial.begin(target, VALIDATOR, BODY.length());
+        BufferedSink sink = Okio.buffer(Okio.sink(partial.getData()));
+        try {
+            sink.writeUtf8(received);
+        } finally {
+            sink.close();
+        }
+    }
+
+    /**
+     * Take the next request received by the server, without blocking forever if it never arrives
+     * @return request received
+     */
+    private @NonNull RecordedRequest takeRequest() throws InterruptedException {
+        RecordedRequest request = server.takeRequest(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (request == null) {
+            fail("No request was received");
+        }
+        return request;
+    }
+
+    private static @NonNull String read(@NonNull File file) throws IOException {
+        BufferedSource source = Okio.buffer(Okio.source(file));
+        try {
+            return source.readUtf8();
+        } finally {
+            source.close();
+        }
+    }
+
+    private Streamer.Builder newStreamer(@NonNull FileCallback callback) {
+        return Streamer.create()
+                .client(client)
+                .cache(cache)
+                .ioExecutor(direct)
+                .writeExecutor(writeExecutor)
+                .scheduler(scheduler)
+                .callback(callback);
+    }
+
+    /**
+     * Callback that records the results, which are delivered in the main thread
+     */
+    private static class Recorder implements FileCallback {
+
+        final List<File> successes = new ArrayList<>();
+        final List<Exception> failures = new ArrayList<>();
+
+        @Override
+        public void onSuccess(@NonNull File file) {
+            successes.add(file);
+        }
+
+        @Override
+        public void onFailure(@NonNull Exception e) {
+            failures.add(e);
+        }
+
+        /**
+         * Run the main thread until the given amount of results arrived
+         * @param results expected
+         */
+        void await(int results) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+            while (successes.size() + failures.size() < results) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("Got " + successes.size() + " successes and " + failures.size() +
+                            " failures of " + results + " results");
+                }
+
+                ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+                Thread.sleep(5);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers for the tests that use the disk cache
+ */
+final class TestCaches {
+
+    private TestCaches() {}
+
+    /**
+     * Delete everything the disk cache persists (resources, journal and layout), so each test starts
+     * from an empty cache
+     * @param context with resource access
+     */
+    static void wipe(@NonNull Context context) {
+        delete(Files.createDir(context));
+        delete(Files.createJournal(context));
+        delete(Files.createLayout(context));
+    }
+
+    /**
+     * Create an empty resource in the cache dir, as if it was downloaded by a previous run
+     * @param context with resource access
+     * @param uri of the resource
+     * @return file of the resource
+     * @throws IOException if it couldnt be created
+     */
+    static @NonNull File createResource(@NonNull Context context, @NonNull Uri uri) throws IOException {
+        File file = Files.create(context, uri, Files.DEFAULT_DEPTH);
+        Files.createParent(file);
+
+        if (!file.exists() && !file.createNewFile()) {
+            throw new IOException("Couldnt create " + file);
+        }
+        return file;
+    }
+
+    /**
+     * Wait until the work queued in the serial AsyncTask executor is done. The index of a DiskCache
+     * is loaded and reconciled there, so once this returns the caches created before are ready
+     * @throws InterruptedException if interrupted while waiting
+     */
+    static void awaitBackground() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+
+        if (!done.await(60, TimeUnit.SECONDS)) {
+            throw new AssertionError("Background work didnt finish");
+        }
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private static void delete(@NonNull File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.saantiaguilera.dynamic_resources.internal;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TinyLfuPolicyTest {
+
+    private static final long MAX_SIZE = 1000;
+    private static final long SIZE = 50;
+
+    private TinyLfuPolicy policy;
+
+    //Entries held by the simulated cache, and the ones it evicted
+    private Map<String, Long> entries;
+    private List<String> evicted;
+    private long size;
+
+    @Before
+    public void setUp() {
+        policy = new TinyLfuPolicy();
+        policy.setMaxSize(MAX_SIZE);
+        entries = new HashMap<>();
+        evicted = new ArrayList<>();
+        size = 0;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowCantBeEmpty() {
+        new TinyLfuPolicy(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowCantBeTheWholeCache() {
+        new TinyLfuPolicy(100);
+    }
+
+    @Test
+    public void emptyPolicyHasNoVictim() {
+        assertNull(policy.victim());
+    }
+
+    @Test
+    public void burstOfOneOffEntriesDoesntFlushThePopularOnes() {
+        for (int i = 0; i < 10; i++) {
+            put("popular" + i);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 10; i++) {
+                policy.onAccess("popular" + i, SIZE);
+            }
+        }
+
+        for (int i = 0; i < 100; i++) {
+            put("oneoff" + i);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(entries.containsKey("popular" + i));
+        }
+        assertTrue(size <= MAX_SIZE);
+    }
+
+    @Test
+    public void candidateLessPopularThanTheMainVictimIsntAdmitted() {
+        for (int i = 0; i < 20; i++) {
+            put("entry" + i);
+        }
+
+        put("candidate");
+
+        //The main space is full, the eldest entry of the window loses against the one of the main space
+        assertEquals(1, evicted.size());
+        assertEquals("entry19", evicted.get(0));
+        assertTrue(entries.containsKey("entry0"));
+    }
+
+    @Test
+    public void candidateMorePopularThanTheMainVictimIsAdmitted() {
+        for (int i = 0; i < 20; i++) {
+            put("entry" + i);
+        }
+        put("candidate");
+        for (int i = 0; i < 5; i++) {
+            policy.onAccess("candidate", SIZE);
+        }
+
+        put("next");
+
+        assertEquals(2, evicted.size());
+        assertEquals("entry0", evicted.get(1));
+        assertTrue(entries.containsKey("candidate"));
+    }
+
+    @Test
+    public void removingAnEntryForgetsItsSize() {
+        put("a");
+        put("b");
+        policy.onRemove("a");
+
+        assertEquals("b", policy.victim());
+        policy.onRemove("b");
+        assertNull(policy.victim());
+    }
+
+    @Test
+    public void clearForgetsAllTheEntries() {
+        put("a");
+        put("b");
+        policy.clear();
+
+        assertNull(policy.victim());
+    }
+
+    /**
+     * Add an entry to the simulated cache, evicting as the DiskCache does while it overflows
+     * @param key of the entry
+     */
+    private void put(@NonNull String key) {
+        policy.onAdd(key, SIZE);
+        entries.put(key, SIZE);
+        size += SIZE;
+
+        while (size > MAX_SIZE) {
+            String victim = policy.victim();
+            policy.onRemove(victim);
+            size -= entries.remove(victim);
+            evicted.add(victim);
+        }
+    }
+
+}